@@ -0,0 +1,265 @@
+package Chapter5;
+
+import Chapter5.engine.GameEngine;
+import Chapter5.engine.Snapshot;
+
+import java.awt.*;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.image.BufferStrategy;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/**
+ * Active rendering of the board: a Canvas drawn through a BufferStrategy by
+ * its own thread, in a fixed-timestep loop. Animation state moves forward in
+ * update(), UPDATE_HZ times a second whatever the frame rate; render() then
+ * draws the frame in stages: Board.paint (backgrounds, grid and seeds), the
+ * animations, and the debug overlay with frame-time percentiles (off until
+ * F3 in GameMain).
+ *
+ * The loop thread never reads the board's engine, which the EDT changes: it
+ * draws the position from the Snapshot value the EDT publishes (a volatile
+ * long), read once per frame, so a move shows up whole in the next frame.
+ * Boards must therefore fit a Snapshot. Rendering allocates nothing but the
+ * buffer's Graphics.
+ */
+public class ActiveRenderer extends Canvas {
+    private static final long serialVersionUID = 1L; // to prevent serializable warning
+
+    public static final int UPDATE_HZ = 60;
+    private static final long STEP_NANOS = 1_000_000_000L / UPDATE_HZ;
+    private static final long MAX_LAG_NANOS = 250_000_000L; // after a stall, skip ahead instead of catching up
+    private static final int STATS_STEPS = UPDATE_HZ / 2;  // percentiles recomputed twice a second
+
+    // Placement highlight: a ring around a newly placed seed, fading out over HIGHLIGHT_STEPS updates
+    private static final int HIGHLIGHT_STEPS = UPDATE_HZ / 2;
+    private static final Color[] HIGHLIGHT = new Color[HIGHLIGHT_STEPS + 1];
+    private static final Stroke STROKE_HIGHLIGHT = new BasicStroke(6);
+    static {
+        for (int step = 0; step <= HIGHLIGHT_STEPS; ++step) {
+            HIGHLIGHT[step] = new Color(255, 215, 0, 255 * step / HIGHLIGHT_STEPS); // gold, fading out
+        }
+    }
+    private static final Color COLOR_OVERLAY = new Color(0, 0, 0, 160);
+    private static final Font FONT_OVERLAY = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+
+    private final Board board;
+    private final LongSupplier position; // the latest snapshot of the game, published by the EDT
+    private final FrameStats frameTimes = new FrameStats(); // start of one frame to the next
+    private final FrameStats renderTimes = new FrameStats(); // drawing and showing a frame
+    private Thread loop;
+    private volatile boolean running;
+    private volatile boolean overlay = false;
+
+    // Animation state, on the loop thread only
+    private final int[] seen;  // cell contents at the last update, to spot new seeds
+    private int highlightCell = -1, highlightSteps;
+    private int statsSteps;
+    private final char[] text = new char[64]; // overlay line, formatted in place
+
+    /** Constructor for a canvas showing the board (of up to Snapshot.MAX_CELLS cells) in the position's snapshots */
+    public ActiveRenderer(Board board, LongSupplier position) {
+        if (!Snapshot.fits(board.getRows(), board.getCols())) {
+            throw new IllegalArgumentException("Board " + board.getRows() + "x" + board.getCols()
+                    + " has more than " + Snapshot.MAX_CELLS + " cells");
+        }
+        this.board = board;
+        this.position = position;
+        seen = new int[board.engine.cellCount()];
+        Arrays.fill(seen, GameEngine.EMPTY);
+        setIgnoreRepaint(true);   // the loop draws; no paint events
+        setFocusable(false);      // keys stay with the Swing components (undo/redo, F3)
+        setPreferredSize(new Dimension(board.getCanvasWidth(), board.getCanvasHeight()));
+        addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                board.layout(getWidth(), getHeight()); // the board fills the canvas
+            }
+        });
+    }
+
+    /** Show or hide the frame-time overlay */
+    public void toggleOverlay() {
+        overlay = !overlay;
+    }
+
+    /** Once displayable, create the buffers and start the loop */
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        createBufferStrategy(2);
+        running = true;
+        loop = new Thread(this::run, "active-render");
+        loop.setDaemon(true);
+        loop.start();
+    }
+
+    /** Stop the loop before the buffers go away */
+    @Override
+    public void removeNotify() {
+        running = false;
+        if (loop != null) {
+            try {
+                loop.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            loop = null;
+        }
+        super.removeNotify();
+    }
+
+    /** The loop: fixed-step updates, then one frame, then wait for the next step */
+    private void run() {
+        long previous = System.nanoTime();
+        long lag = 0;
+        while (running) {
+            long now = System.nanoTime();
+            frameTimes.record(now - previous);
+            lag += Math.min(now - previous, MAX_LAG_NANOS);
+            previous = now;
+            long snapshot = position.getAsLong(); // one position for the whole frame
+            while (lag >= STEP_NANOS) {
+                update(snapshot);
+                lag -= STEP_NANOS;
+            }
+            render(snapshot);
+            renderTimes.record(System.nanoTime() - now);
+            long wait = STEP_NANOS - lag - (System.nanoTime() - now);
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+        }
+    }
+
+    /** Move the animations one step forward, towards the snapshot's position */
+    private void update(long snapshot) {
+        for (int cell = 0; cell < seen.length; ++cell) {
+            int content = Snapshot.get(snapshot, cell);
+            if (content != seen[cell]) {
+                if (seen[cell] != GameEngine.EMPTY || content == GameEngine.EMPTY) {
+                    highlightSteps = 0;       // taken back or a new game: nothing to highlight
+                }
+                if (content != GameEngine.EMPTY) {
+                    highlightCell = cell;     // a seed was placed
+                    highlightSteps = HIGHLIGHT_STEPS;
+                }
+                seen[cell] = content;
+            }
+        }
+        if (highlightSteps > 0) {
+            --highlightSteps;
+        }
+        if (++statsSteps == STATS_STEPS) {
+            statsSteps = 0;
+            frameTimes.computePercentiles();
+            renderTimes.computePercentiles();
+        }
+    }
+
+    /** Draw one frame and show it, redrawing if the buffer contents were lost meanwhile */
+    private void render(long snapshot) {
+        BufferStrategy strategy = getBufferStrategy();
+        if (strategy == null) {
+            return;
+        }
+        do {
+            do {
+                Graphics2D g2d = (Graphics2D) strategy.getDrawGraphics();
+                try {
+                    draw(g2d, snapshot);
+                } finally {
+                    g2d.dispose();
+                }
+            } while (strategy.contentsRestored());
+            strategy.show();
+        } while (strategy.contentsLost());
+        Toolkit.getDefaultToolkit().sync(); // flush now, so frames do not queue up in the window system
+    }
+
+    /** The drawing stages of a frame */
+    private void draw(Graphics2D g2d, long snapshot) {
+        Board.Geometry geometry = board.getGeometry();
+        if (geometry.width < getWidth() || geometry.height < getHeight()) {
+            g2d.setColor(GameMain.COLOR_BG); // the margins around the board
+            g2d.fillRect(0, 0, getWidth(), getHeight());
+        }
+        board.paint(g2d, snapshot);
+
+        if (highlightSteps > 0 && highlightCell != -1) {
+            int cols = board.getCols();
+            int size = geometry.cellSize;
+            g2d.setColor(HIGHLIGHT[highlightSteps]);
+            g2d.setStroke(STROKE_HIGHLIGHT);
+            g2d.drawRect(geometry.x + highlightCell % cols * size + geometry.padding / 2,
+                    geometry.y + highlightCell / cols * size + geometry.padding / 2,
+                    size - geometry.padding, size - geometry.padding);
+        }
+
+        if (overlay) {
+            g2d.setColor(COLOR_OVERLAY);
+            g2d.fillRect(0, 0, 300, 40);
+            g2d.setColor(Color.WHITE);
+            g2d.setFont(FONT_OVERLAY);
+            g2d.drawChars(text, 0, frameTimes.format("frame ", text), 6, 16);
+            g2d.drawChars(text, 0, renderTimes.format("render", text), 6, 32);
+        }
+    }
+
+    /** Times of the last SIZE frames, and their percentiles as of the last computePercentiles() */
+    static final class FrameStats {
+        static final int SIZE = 256;
+        private final long[] times = new long[SIZE];
+        private final long[] sorted = new long[SIZE];
+        private int count, next;
+        private long p50, p95, p99, max;
+
+        void record(long nanos) {
+            times[next] = nanos;
+            next = (next + 1) % SIZE;
+            count = Math.min(count + 1, SIZE);
+        }
+
+        void computePercentiles() {
+            if (count == 0) return;
+            System.arraycopy(times, 0, sorted, 0, count);
+            Arrays.sort(sorted, 0, count);
+            p50 = sorted[(count - 1) * 50 / 100];
+            p95 = sorted[(count - 1) * 95 / 100];
+            p99 = sorted[(count - 1) * 99 / 100];
+            max = sorted[count - 1];
+        }
+
+        /** Write "label p50 x p95 x p99 x max x" (milliseconds) into text; returns its length */
+        int format(String label, char[] text) {
+            int at = 0;
+            label.getChars(0, label.length(), text, at);
+            at += label.length();
+            at = put(text, at, " p50 ", p50);
+            at = put(text, at, " p95 ", p95);
+            at = put(text, at, " p99 ", p99);
+            return put(text, at, " max ", max);
+        }
+
+        /** Write the name and the nanos as milliseconds with one decimal; returns the new length */
+        private static int put(char[] text, int at, String name, long nanos) {
+            name.getChars(0, name.length(), text, at);
+            at += name.length();
+            long tenths = Math.min(nanos / 100_000, 99_999);
+            int start = at;
+            do {
+                text[at++] = (char) ('0' + tenths % 10);
+                tenths /= 10;
+                if (at - start == 1) text[at++] = '.';
+            } while (tenths > 0 || at - start < 3);
+            for (int i = start, j = at - 1; i < j; ++i, --j) {
+                char c = text[i];
+                text[i] = text[j];
+                text[j] = c;
+            }
+            return at;
+        }
+    }
+}
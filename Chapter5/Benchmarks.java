@@ -0,0 +1,241 @@
+package Chapter5;
+
+import Chapter5.engine.AlphaBetaSearch;
+import Chapter5.engine.BitBoard;
+import Chapter5.engine.GameEngine;
+import Chapter5.engine.HeuristicStrategy;
+import Chapter5.engine.MnkBoard;
+import Chapter5.engine.ParallelSearch;
+import Chapter5.engine.PerfectStrategy;
+import Chapter5.engine.RandomStrategy;
+import Chapter5.engine.SearchStrategy;
+import Chapter5.engine.State;
+import Chapter5.engine.Strategy;
+import Chapter5.engine.TranspositionTable;
+import Chapter5.engine.Zobrist;
+
+import java.lang.management.ManagementFactory;
+import java.util.SplittableRandom;
+
+/**
+ * The regression gates for the engine hot paths.
+ *
+ * With --check-allocations it runs the allocation gate: every move path
+ * (board update, move choice, search and playouts) must allocate nothing
+ * once warmed up; it prints PASS/FAIL per path and exits with status 1 on any
+ * failure, so a build script can run it as a regression check.
+ * With --check-keys it plays and takes back random games on 3x3, 7x7 and
+ * 15x15 boards, checking after every move that the incrementally updated
+ * Zobrist key equals Zobrist.hash() computed from scratch, and that the key
+ * update allocates nothing; it exits with status 1 on any failure.
+ * "mvn -B test" (pom.xml at the project root) runs both gates.
+ *
+ * Usage: java -Djava.awt.headless=true Chapter5.Benchmarks --check-allocations | --check-keys
+ * (run with the project root on the classpath, so the seed images load).
+ * The timings (ops/sec and, with -prof gc, bytes allocated per op) are the JMH
+ * benchmarks in the jmh module (see jmh/pom.xml).
+ */
+public class Benchmarks {
+    private static final int ALLOCATION_ROUNDS = 3;
+
+    /** One gate operation; the result is consumed so the JIT cannot drop the work */
+    interface Op {
+        long run();
+    }
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    /** Sink for the op results */
+    static volatile long sink;
+
+    /**
+     * Runs the op ops times after warming up, in up to ALLOCATION_ROUNDS rounds; prints PASS/FAIL
+     * and returns true if a whole round allocated nothing. An allocation per op fails every round,
+     * while a one-off allocation by the JVM itself (seen when a method is replaced by its C2
+     * version mid-round) only spoils the round it falls in.
+     */
+    static boolean checkAllocations(String name, int ops, Op op) {
+        long result = 0;
+        for (int i = 0; i < 2 * ops; ++i) {
+            result += op.run(); // JIT-compiled, with escape analysis, before measuring
+        }
+        long threadId = Thread.currentThread().getId();
+        long overhead = -THREADS.getThreadAllocatedBytes(threadId);
+        overhead += THREADS.getThreadAllocatedBytes(threadId); // what reading the counter itself allocates
+        long allocated = 0;
+        for (int round = 0; round < ALLOCATION_ROUNDS; ++round) {
+            long allocatedBefore = THREADS.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < ops; ++i) {
+                result += op.run();
+            }
+            allocated = THREADS.getThreadAllocatedBytes(threadId) - allocatedBefore - overhead;
+            if (allocated <= 0) break;
+        }
+        sink = result;
+        boolean pass = allocated <= 0;
+        System.out.printf("%-4s %-32s %10d bytes in %d ops%n", pass ? "PASS" : "FAIL", name,
+                Math.max(0, allocated), ops);
+        return pass;
+    }
+
+    /** Positions reached by random play, with the game still going */
+    static BitBoard[] randomPositions(int count, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        BitBoard[] positions = new BitBoard[count];
+        for (int i = 0; i < count; ++i) {
+            BitBoard board;
+            do {
+                board = new BitBoard();
+                int moves = random.nextInt(BitBoard.CELLS - 1);
+                State state = State.PLAYING;
+                for (int m = 0; m < moves && state == State.PLAYING; ++m) {
+                    state = board.play(board.moveCount() & 1, RandomStrategy.randomEmptyCell(board, random));
+                }
+                if (state != State.PLAYING) board = null;
+            } while (board == null);
+            positions[i] = board;
+        }
+        return positions;
+    }
+
+    /** Plays one game between the two strategies; returns the number of moves */
+    static long playout(GameEngine engine, Strategy cross, Strategy nought) {
+        engine.reset();
+        int side = GameEngine.CROSS;
+        State state = State.PLAYING;
+        while (state == State.PLAYING) {
+            state = engine.play(side, ((side == GameEngine.CROSS) ? cross : nought).chooseMove(engine, side));
+            side = GameEngine.opponent(side);
+        }
+        return engine.moveCount();
+    }
+
+    /**
+     * The allocation gate over the move paths. ParallelSearch is checked on the
+     * calling thread, which starts and joins the helpers. Not covered:
+     * MonteCarloSearch, which hands work to a ForkJoinPool, and Board.paint.
+     */
+    private static boolean checkMovePaths() {
+        boolean pass = true;
+
+        Board board = new Board();
+        board.stepGame(Seed.CROSS, 1, 1);
+        board.stepGame(Seed.NOUGHT, 0, 0);
+        int[] cell = {0};
+        pass &= checkAllocations("Board.stepGame", 100_000, () -> {
+            int next = cell[0] = (cell[0] + 1) % BitBoard.CELLS;
+            if (next == 0 || next == 4) return 0;
+            State state = board.stepGame(Seed.CROSS, next / BitBoard.COLS, next % BitBoard.COLS);
+            board.engine.remove(GameEngine.CROSS, next);
+            return state.ordinal();
+        });
+
+        BitBoard[] positions = randomPositions(1024, 1);
+        AlphaBetaSearch search = new AlphaBetaSearch(new TranspositionTable(16));
+        int[] index = {0};
+        pass &= checkAllocations("GameMain.computerMove 3x3", 100_000, () -> {
+            BitBoard position = positions[index[0]++ & 1023];
+            return GameMain.chooseComputerMove(position, position.moveCount() & 1, search);
+        });
+
+        MnkBoard mnk = new MnkBoard(7, 7, 5);
+        mnk.play(GameEngine.CROSS, mnk.cellOf(3, 3));
+        mnk.play(GameEngine.NOUGHT, mnk.cellOf(2, 3));
+        pass &= checkAllocations("AlphaBetaSearch 7x7 k=5 depth 3", 2_000, () -> {
+            search.table().clear(); // a full search each time, not a table hit
+            return search.bestMove(mnk, GameEngine.CROSS, 3, 3_600_000);
+        });
+
+        ParallelSearch parallel = new ParallelSearch(new TranspositionTable(16), 3);
+        pass &= checkAllocations("ParallelSearch 7x7 k=5 3 threads", 500, () -> {
+            parallel.table().clear();
+            return parallel.bestMove(mnk, GameEngine.CROSS, 3, 3_600_000);
+        });
+        parallel.shutdown();
+
+        SplittableRandom random = new SplittableRandom(42);
+        BitBoard bitBoard = new BitBoard();
+        MnkBoard big = new MnkBoard(7, 7, 5);
+        Strategy randomPlayer = new RandomStrategy(random.split());
+        Strategy heuristic = new HeuristicStrategy(random.split());
+        Strategy perfect = new PerfectStrategy(new RandomStrategy(random.split()));
+        Strategy searching = new SearchStrategy(new AlphaBetaSearch(new TranspositionTable(16)), 2, 3_600_000);
+        pass &= checkAllocations("playout 3x3 random", 10_000, () -> playout(bitBoard, randomPlayer, randomPlayer));
+        pass &= checkAllocations("playout 3x3 heuristic", 10_000, () -> playout(bitBoard, heuristic, heuristic));
+        pass &= checkAllocations("playout 3x3 perfect", 10_000, () -> playout(bitBoard, perfect, perfect));
+        pass &= checkAllocations("playout 7x7 k=5 random", 10_000, () -> playout(big, randomPlayer, randomPlayer));
+        pass &= checkAllocations("playout 7x7 k=5 search vs random", 200, () -> playout(big, searching, randomPlayer));
+        return pass;
+    }
+
+    /** The key check on each board size */
+    private static boolean checkKeys() {
+        boolean pass = true;
+        SplittableRandom random = new SplittableRandom(5);
+        pass &= checkKeys(GameEngine.create(3, 3, 3), 20_000, random);
+        pass &= checkKeys(GameEngine.create(7, 7, 5), 2_000, random);
+        pass &= checkKeys(GameEngine.create(15, 15, 5), 500, random);
+        return pass;
+    }
+
+    /**
+     * Plays random games to the end and takes all their moves back, comparing key() with
+     * Zobrist.hash() after every play and remove; then checks that play/remove allocate nothing
+     */
+    private static boolean checkKeys(GameEngine engine, int games, SplittableRandom random) {
+        String name = engine.rows() + "x" + engine.cols() + " k=" + engine.winLength();
+        int[] moves = new int[engine.cellCount()];
+        long checks = 0;
+        for (int game = 0; game < games; ++game) {
+            engine.reset();
+            int count = 0;
+            State state = State.PLAYING;
+            while (state == State.PLAYING) {
+                int cell = moves[count++] = RandomStrategy.randomEmptyCell(engine, random);
+                state = engine.play((count - 1) & 1, cell); // CROSS plays the even moves
+                if (!keyMatches(engine, name, "play", cell)) return false;
+                ++checks;
+            }
+            while (count > 0) {
+                int cell = moves[--count];
+                engine.remove(count & 1, cell);
+                if (!keyMatches(engine, name, "remove", cell)) return false;
+                ++checks;
+            }
+        }
+        System.out.printf("PASS %-32s %10d keys match Zobrist.hash%n", "key " + name, checks);
+
+        engine.reset();
+        int[] cell = {0};
+        return checkAllocations("key update " + name, 100_000, () -> {
+            int next = cell[0] = (cell[0] + 1) % engine.cellCount();
+            engine.play(GameEngine.CROSS, next);
+            long key = engine.key();
+            engine.remove(GameEngine.CROSS, next);
+            return key ^ engine.key();
+        });
+    }
+
+    /** Returns true if the engine's key is the from-scratch hash; else prints the failure */
+    private static boolean keyMatches(GameEngine engine, String name, String action, int cell) {
+        long expected = Zobrist.hash(engine);
+        if (engine.key() == expected) {
+            return true;
+        }
+        System.out.printf("FAIL key %s: after %s of cell %d, key %016x, hash %016x%n",
+                name, action, cell, engine.key(), expected);
+        return false;
+    }
+
+    /** The entry "main" method */
+    public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--check-allocations")) {
+            System.exit(checkMovePaths() ? 0 : 1);
+        }
+        if (args.length > 0 && args[0].equals("--check-keys")) {
+            System.exit(checkKeys() ? 0 : 1);
+        }
+        System.err.println("Usage: java -Djava.awt.headless=true Chapter5.Benchmarks --check-allocations | --check-keys");
+        System.exit(2);
+    }
+}
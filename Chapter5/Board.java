@@ -1,133 +1,300 @@
 package Chapter5;
 
+import Chapter5.engine.GameEngine;
+import Chapter5.engine.Snapshot;
+import Chapter5.engine.State;
+
 import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
- * The Board class models the ROWS-by-COLS game board.
+ * The Board class models the rows-by-cols game board.
+ * The classic 3x3 board runs on a BitBoard engine; other sizes (and other
+ * win lengths) run on an MnkBoard engine.
+ *
+ * The board is drawn at any size: layout() fits it into the component once per
+ * resize, and the rasters (static layer and seed images) are rendered for the
+ * cell size and the display's HiDPI scale, kept for a few sizes and scales.
  */
 public class Board {
     // Define named constants
-    public static final int ROWS = 3;  // ROWS x COLS cells
-    public static final int COLS = 3;
+    public static final int DEFAULT_ROWS = 3;  // classic 3x3, 3 in a row
+    public static final int DEFAULT_COLS = 3;
+    public static final int DEFAULT_WIN_LENGTH = 3;
     // Define named constants for drawing
-    public static final int CANVAS_WIDTH = Cell.SIZE * COLS;  // the drawing canvas
-    public static final int CANVAS_HEIGHT = Cell.SIZE * ROWS;
-    public static final int GRID_WIDTH = 10;  // Grid-line's width (Increased for bolder lines)
+    public static final int GRID_WIDTH = 10;  // Grid-line's width at Cell.SIZE (Increased for bolder lines)
     public static final int GRID_WIDTH_HALF = GRID_WIDTH / 2; // Grid-line's half-width
     public static final Color COLOR_GRID = new Color(101, 67, 33); // Dark brown for a pixel-art ground/wood feel
+    public static final Color COLOR_CELL_LIGHT = new Color(180, 200, 180); // Light green-grey
+    public static final Color COLOR_CELL_DARK = new Color(160, 180, 160);  // Darker green-grey
+    public static final int MIN_CELL_SIZE = 8; // smallest cell drawn, however small the window
     public static final int Y_OFFSET = 1;  // Fine tune for better display
 
     // Define properties (package-visible)
-    /** Composes of 2D array of ROWS-by-COLS Cell instances */
+    /** Number of rows and columns, and stones in a row needed to win */
+    final int rows, cols, winLength;
+    /** The preferred drawing canvas, with cells of Cell.SIZE */
+    final int canvasWidth, canvasHeight;
+    /** The game engine holding the position; cells are views over it */
+    GameEngine engine;
+    /** Composes of 2D array of rows-by-cols Cell instances */
     Cell[][] cells;
+    /** Where the board is drawn; replaced as a whole by layout(), so any thread sees a consistent one */
+    private volatile Geometry geometry;
+    /** Rasters by cell size and scale, least recently used first (painting thread only) */
+    private final Map<Long, Rasters> rasterCache = new LinkedHashMap<Long, Rasters>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Rasters> eldest) {
+            return size() > MAX_CACHED_RASTERS;
+        }
+    };
+    private static final int MAX_CACHED_RASTERS = 4; // e.g. two sizes on two displays
+    /** The rasters last painted with, and what they were looked up for */
+    private Rasters rasters;
+    private GraphicsConfiguration rastersConfig;
+    private int rastersCellSize;
+    /** Scratch rectangle for the clip bounds, so paint() does not allocate */
+    private final Rectangle clip = new Rectangle();
 
-    /** Constructor to initialize the game board */
+    /** Constructor to initialize the classic 3x3 game board */
     public Board() {
+        this(DEFAULT_ROWS, DEFAULT_COLS, DEFAULT_WIN_LENGTH);
+    }
+
+    /** Constructor to initialize a rows-by-cols game board, winLength in a row to win */
+    public Board(int rows, int cols, int winLength) {
+        this.rows = rows;
+        this.cols = cols;
+        this.winLength = winLength;
+        canvasWidth = Cell.SIZE * cols;
+        canvasHeight = Cell.SIZE * rows;
+        geometry = new Geometry(rows, cols, canvasWidth, canvasHeight);
         initGame();
     }
 
     /** Initialize the game objects (run once) */
     public void initGame() {
-        cells = new Cell[ROWS][COLS]; // allocate the array
-        for (int row = 0; row < ROWS; ++row) {
-            for (int col = 0; col < COLS; ++col) {
+        engine = GameEngine.create(rows, cols, winLength);
+        cells = new Cell[rows][cols]; // allocate the array
+        for (int row = 0; row < rows; ++row) {
+            for (int col = 0; col < cols; ++col) {
                 // Allocate element of the array
-                cells[row][col] = new Cell(row, col);
-                // Cells are initialized in the constructor
+                cells[row][col] = new Cell(engine, row, col);
+                // Cells read their content from the engine
             }
         }
     }
 
     /** Reset the game board, ready for new game */
     public void newGame() {
-        for (int row = 0; row < ROWS; ++row) {
-            for (int col = 0; col < COLS; ++col) {
-                cells[row][col].newGame(); // clear the cell content
-            }
+        engine.reset(); // clear all the stones
+    }
+
+    /** Returns the engine side (GameEngine.CROSS or GameEngine.NOUGHT) of the player */
+    static int sideOf(Seed player) {
+        return (player == Seed.CROSS) ? GameEngine.CROSS : GameEngine.NOUGHT;
+    }
+
+    // Public getters
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public int getCanvasWidth() {
+        return canvasWidth;
+    }
+
+    public int getCanvasHeight() {
+        return canvasHeight;
+    }
+
+    /** Returns where the board is drawn, as of the last layout() */
+    public Geometry getGeometry() {
+        return geometry;
+    }
+
+    /** Fit the board into a width-by-height area (the component's size); does nothing if the size is unchanged */
+    public void layout(int width, int height) {
+        Geometry current = geometry;
+        if (width != current.areaWidth || height != current.areaHeight) {
+            geometry = new Geometry(rows, cols, width, height);
+        }
+    }
+
+    /** Returns the cell number at (x, y) in the component, or -1 if it is outside the board */
+    public int cellAt(int x, int y) {
+        Geometry geometry = this.geometry;
+        if (x < geometry.x || y < geometry.y) {
+            return -1;
         }
+        int row = (y - geometry.y) / geometry.cellSize;
+        int col = (x - geometry.x) / geometry.cellSize;
+        return (row < rows && col < cols) ? engine.cellOf(row, col) : -1;
+    }
+
+    /** Returns the Zobrist key identifying the current position */
+    public long getKey() {
+        return engine.key();
+    }
+
+    /** Returns the content (CROSS, NOUGHT or NO_SEED) of (row, col) */
+    public Seed getContent(int row, int col) {
+        return cells[row][col].getContent();
+    }
+
+    /** Returns true if (row, col) has no seed */
+    public boolean isEmpty(int row, int col) {
+        return engine.isEmpty(engine.cellOf(row, col));
     }
 
     /**
      * The given player makes a move on (selectedRow, selectedCol).
-     * Update cells[selectedRow][selectedCol]. Compute and return the
-     * new game state (PLAYING, DRAW, CROSS_WON, NOUGHT_WON).
+     * Compute and return the new game state (PLAYING, DRAW, CROSS_WON, NOUGHT_WON).
      */
     public State stepGame(Seed player, int selectedRow, int selectedCol) {
-        // Update game board
-        cells[selectedRow][selectedCol].content = player;
-
-        // Compute and return the new game state
-        if (cells[selectedRow][0].content == player  // 3-in-the-row
-                && cells[selectedRow][1].content == player
-                && cells[selectedRow][2].content == player
-                || cells[0][selectedCol].content == player // 3-in-the-column
-                && cells[1][selectedCol].content == player
-                && cells[2][selectedCol].content == player
-                || selectedRow == selectedCol     // 3-in-the-diagonal
-                && cells[0][0].content == player
-                && cells[1][1].content == player
-                && cells[2][2].content == player
-                || selectedRow + selectedCol == 2 // 3-in-the-opposite-diagonal
-                && cells[0][2].content == player
-                && cells[1][1].content == player
-                && cells[2][0].content == player) {
-            return (player == Seed.CROSS) ? State.CROSS_WON : State.NOUGHT_WON;
-        } else {
-            // Nobody win. Check for DRAW (all cells occupied) or PLAYING.
-            for (int row = 0; row < ROWS; ++row) {
-                for (int col = 0; col < COLS; ++col) {
-                    if (cells[row][col].content == Seed.NO_SEED) {
-                        return State.PLAYING; // still have empty cells
-                    }
-                }
-            }
-            return State.DRAW; // no empty cell, it's a draw
-        }
+        return engine.play(sideOf(player), engine.cellOf(selectedRow, selectedCol));
     }
 
     /** Check if the player with "seed" has won after placing at (row, col) */
     public boolean hasWon(Seed player, int row, int col) {
-        // Simplified hasWon logic to be used by AI
-        return (cells[row][0].content == player && cells[row][1].content == player && cells[row][2].content == player) ||
-                (cells[0][col].content == player && cells[1][col].content == player && cells[2][col].content == player) ||
-                (row == col && cells[0][0].content == player && cells[1][1].content == player && cells[2][2].content == player) ||
-                (row + col == 2 && cells[0][2].content == player && cells[1][1].content == player && cells[2][0].content == player);
+        return engine.hasWon(sideOf(player), engine.cellOf(row, col));
     }
 
-    /** Paint itself on the graphics canvas, given the Graphics context */
+    /**
+     * Paint itself on the graphics canvas, given the Graphics context.
+     * The static layer is a single blit of the cached image; only the cells inside the
+     * clip are painted, so repainting one cell costs the same on any board size.
+     */
     public void paint(Graphics g) {
+        paint(g, 0L, false);
+    }
+
+    /**
+     * Same, with the seeds of the snapshot (of this board's size) instead of the engine's:
+     * for drawing off the EDT, which must not read the engine while moves are made on it.
+     */
+    public void paint(Graphics g, long snapshot) {
+        paint(g, snapshot, true);
+    }
+
+    private void paint(Graphics g, long snapshot, boolean fromSnapshot) {
         Graphics2D g2d = (Graphics2D) g;
-        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        Geometry geometry = this.geometry;
+        GraphicsConfiguration config = g2d.getDeviceConfiguration();
+        if (rasters == null || config != rastersConfig || geometry.cellSize != rastersCellSize) {
+            rasters = rasters(config, geometry);
+            rastersConfig = config;
+            rastersCellSize = geometry.cellSize;
+        }
+        // At the display's scale, the image's pixels map 1:1 to the device's; Java2D clips the blit
+        g2d.drawImage(rasters.background, geometry.x, geometry.y, geometry.width, geometry.height, null);
 
-        // Draw alternating background for cells (Creative Board)
-        Color color1 = new Color(180, 200, 180); // Light green-grey
-        Color color2 = new Color(160, 180, 160); // Darker green-grey
-        for (int row = 0; row < ROWS; ++row) {
-            for (int col = 0; col < COLS; ++col) {
-                if ((row + col) % 2 == 0) {
-                    g2d.setColor(color1);
+        // Draw the cells (X/O symbols) inside the clip
+        clip.setBounds(geometry.x, geometry.y, geometry.width, geometry.height);
+        g2d.getClipBounds(clip); // left as the whole board if there is no clip
+        int size = geometry.cellSize;
+        int firstRow = Math.max(0, Math.floorDiv(clip.y - geometry.y, size));
+        int lastRow = Math.min(rows - 1, Math.floorDiv(clip.y + clip.height - 1 - geometry.y, size));
+        int firstCol = Math.max(0, Math.floorDiv(clip.x - geometry.x, size));
+        int lastCol = Math.min(cols - 1, Math.floorDiv(clip.x + clip.width - 1 - geometry.x, size));
+        for (int row = firstRow; row <= lastRow; ++row) {
+            for (int col = firstCol; col <= lastCol; ++col) {
+                Cell cell = cells[row][col];
+                if (fromSnapshot) {
+                    cell.paint(g2d, geometry, rasters.seeds, Cell.seedOf(Snapshot.get(snapshot, cell.cell)));
                 } else {
-                    g2d.setColor(color2);
+                    cell.paint(g2d, geometry, rasters.seeds);  // ask the cell to paint itself
                 }
-                g2d.fillRect(col * Cell.SIZE, row * Cell.SIZE, Cell.SIZE, Cell.SIZE);
+            }
+        }
+    }
+
+    /** Returns the rasters for the geometry's cell size at the display's scale, from the cache or rendered now */
+    private Rasters rasters(GraphicsConfiguration config, Geometry geometry) {
+        double scale = (config != null) ? config.getDefaultTransform().getScaleX() : 1;
+        long key = ((long) geometry.cellSize << 32) | Float.floatToIntBits((float) scale);
+        Rasters cached = rasterCache.get(key);
+        if (cached == null) {
+            cached = new Rasters(renderBackground(config, geometry, scale),
+                    new SeedAtlas(geometry.seedSize, scale, config));
+            rasterCache.put(key, cached);
+        }
+        return cached;
+    }
+
+    /** Render the alternating cell backgrounds and the grid-lines at the scale, in an image compatible with the device */
+    private BufferedImage renderBackground(GraphicsConfiguration config, Geometry geometry, double scale) {
+        int width = (int) Math.ceil(geometry.width * scale);
+        int height = (int) Math.ceil(geometry.height * scale);
+        // Opaque, so drawing it is a straight copy rather than a blend
+        BufferedImage image = (config != null)
+                ? config.createCompatibleImage(width, height, Transparency.OPAQUE)
+                : new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = image.createGraphics();
+        g2d.scale(scale, scale);
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        int size = geometry.cellSize;
+
+        // Draw alternating background for cells (Creative Board)
+        for (int row = 0; row < rows; ++row) {
+            for (int col = 0; col < cols; ++col) {
+                g2d.setColor(((row + col) % 2 == 0) ? COLOR_CELL_LIGHT : COLOR_CELL_DARK);
+                g2d.fillRect(col * size, row * size, size, size);
             }
         }
 
         // Draw the grid-lines on top of the cell backgrounds
-        g2d.setStroke(new BasicStroke(GRID_WIDTH, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND)); // Use BasicStroke for GRID_WIDTH
+        g2d.setStroke(new BasicStroke(geometry.gridWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
         g2d.setColor(COLOR_GRID);
-        for (int row = 1; row < ROWS; ++row) {
-            g2d.drawLine(0, Cell.SIZE * row, CANVAS_WIDTH, Cell.SIZE * row);
+        for (int row = 1; row < rows; ++row) {
+            g2d.drawLine(0, size * row, geometry.width, size * row);
         }
-        for (int col = 1; col < COLS; ++col) {
-            g2d.drawLine(Cell.SIZE * col, 0, Cell.SIZE * col, CANVAS_HEIGHT);
+        for (int col = 1; col < cols; ++col) {
+            g2d.drawLine(size * col, 0, size * col, geometry.height);
         }
+        g2d.dispose();
+        return image;
+    }
 
-        // Draw all the cells (X/O symbols)
-        for (int row = 0; row < ROWS; ++row) {
-            for (int col = 0; col < COLS; ++col) {
-                cells[row][col].paint(g);  // ask the cell to paint itself
-            }
+    /** The static layer and the seed images for one cell size and scale */
+    private static final class Rasters {
+        final BufferedImage background;
+        final SeedAtlas seeds;
+
+        Rasters(BufferedImage background, SeedAtlas seeds) {
+            this.background = background;
+            this.seeds = seeds;
+        }
+    }
+
+    /** Where the board is drawn in an area: the largest square cells that fit, centred (immutable) */
+    public static final class Geometry {
+        /** The area it was computed for */
+        public final int areaWidth, areaHeight;
+        /** Top-left corner and size of the board, and of a cell */
+        public final int x, y, width, height, cellSize;
+        /** The seed inside a cell, and the grid-lines, scaled with the cell like Cell.PADDING and GRID_WIDTH */
+        public final int padding, seedSize, gridWidth;
+
+        Geometry(int rows, int cols, int areaWidth, int areaHeight) {
+            this.areaWidth = areaWidth;
+            this.areaHeight = areaHeight;
+            cellSize = Math.max(MIN_CELL_SIZE, Math.min(areaWidth / cols, areaHeight / rows));
+            width = cellSize * cols;
+            height = cellSize * rows;
+            x = Math.max(0, (areaWidth - width) / 2);
+            y = Math.max(0, (areaHeight - height) / 2);
+            padding = cellSize * Cell.PADDING / Cell.SIZE;
+            seedSize = cellSize - 2 * padding;
+            gridWidth = Math.max(1, cellSize * GRID_WIDTH / Cell.SIZE);
         }
     }
-}
\ No newline at end of file
+}
@@ -1,5 +1,7 @@
 package Chapter5;
 
+import Chapter5.engine.GameEngine;
+
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import javax.imageio.ImageIO;
@@ -11,41 +13,52 @@ import java.net.URL;
  */
 public class Cell {
     // Define named constants for drawing
-    public static final int SIZE = 120; // cell width/height (square)
-    // Symbols (cross/nought) are displayed inside a cell, with padding from border
+    public static final int SIZE = 120; // preferred cell width/height (square); the board scales to its window
+    // Symbols (cross/nought) are displayed inside a cell, with padding from border (at SIZE; scaled with the cell)
     public static final int PADDING = SIZE / 5;
     public static final int SEED_SIZE = SIZE - PADDING * 2;
 
     // Define properties (package-visible)
-    /** Content of this cell (Seed.EMPTY, Seed.CROSS, or Seed.NOUGHT) */
-    Seed content;
-    /** Row and column of this cell */
-    int row, col;
+    /** The engine this cell is a view of */
+    GameEngine engine;
+    /** Row and column of this cell, and its cell number in the engine */
+    int row, col, cell;
 
-    /** Constructor to initialize this cell with the specified row and col */
-    public Cell(int row, int col) {
+    /** Constructor to initialize this cell as a view of (row, col) of the engine */
+    public Cell(GameEngine engine, int row, int col) {
+        this.engine = engine;
         this.row = row;
         this.col = col;
-        content = Seed.NO_SEED;
+        this.cell = engine.cellOf(row, col);
     }
 
-    /** Reset this cell's content to EMPTY, ready for new game */
-    public void newGame() {
-        content = Seed.NO_SEED;
+    /** Returns the content of this cell (Seed.NO_SEED, Seed.CROSS, or Seed.NOUGHT) */
+    public Seed getContent() {
+        return seedOf(engine.get(cell));
     }
 
-    /** Paint itself on the graphics canvas, given the Graphics context */
-    public void paint(Graphics g) {
-        // Draw the Seed if it is not empty
-        int x1 = col * SIZE + PADDING;
-        int y1 = row * SIZE + PADDING;
+    /** Returns the Seed of an engine side (GameEngine.CROSS, GameEngine.NOUGHT or GameEngine.EMPTY) */
+    static Seed seedOf(int side) {
+        switch (side) {
+            case GameEngine.CROSS:  return Seed.CROSS;
+            case GameEngine.NOUGHT: return Seed.NOUGHT;
+            default:              return Seed.NO_SEED;
+        }
+    }
 
-        Graphics2D g2d = (Graphics2D) g;
-        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON); // Enable anti-aliasing
+    /** Paint itself on the graphics canvas, given the Graphics context, the board's geometry and its seed images */
+    public void paint(Graphics g, Board.Geometry geometry, SeedAtlas seeds) {
+        paint(g, geometry, seeds, getContent());
+    }
+
+    /** Same, with the content given rather than read from the engine */
+    void paint(Graphics g, Board.Geometry geometry, SeedAtlas seeds, Seed content) {
+        // Draw the Seed if it is not empty
+        int x1 = geometry.x + col * geometry.cellSize + geometry.padding;
+        int y1 = geometry.y + row * geometry.cellSize + geometry.padding;
 
         if (content == Seed.CROSS || content == Seed.NOUGHT) {
-            // Image loading is handled in Seed enum, so we just draw the image here
-            g2d.drawImage(content.getImage(), x1, y1, SEED_SIZE, SEED_SIZE, null);
+            seeds.draw(g, content, x1, y1); // pre-scaled: a 1:1 blit
         }
     }
 }
\ No newline at end of file
@@ -1,12 +1,29 @@
 package Chapter5;
 
+import Chapter5.engine.AlphaBetaSearch;
+import Chapter5.engine.BitBoard;
+import Chapter5.engine.GameEngine;
+import Chapter5.engine.GameMode;
+import Chapter5.engine.GameRecordLog;
+import Chapter5.engine.MonteCarloSearch;
+import Chapter5.engine.ParallelSearch;
+import Chapter5.engine.PerfectPlay;
+import Chapter5.engine.Snapshot;
+import Chapter5.engine.State;
+import Chapter5.engine.Tablebase;
+
 import java.awt.*;
 import java.awt.event.*;
+import java.beans.PropertyChangeListener;
 import javax.swing.*;
-import java.util.Random; // For AI random moves
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.sound.sampled.*; // Sound imports are already here
 
 /**
@@ -23,66 +40,135 @@ public class GameMain extends JPanel {
     public static final Color COLOR_CROSS = new Color(239, 105, 80);  // Red #EF6950
     public static final Color COLOR_NOUGHT = new Color(64, 154, 225); // Blue #409AE1
     public static final Font FONT_STATUS = new Font("OCR A Extended", Font.PLAIN, 14);
+    // Bound properties of the game, fired when they change; the status bar listens to them
+    public static final String PROPERTY_STATE = "currentState";
+    public static final String PROPERTY_PLAYER = "currentPlayer";
 
     // Define game objects
     private Board board;         // the game board
     private State currentState;  // the current state of the game
     private Seed currentPlayer;  // the current player
     private JLabel statusBar;    // for displaying status message
+    private boolean statusUpdatePending; // an updateStatusBar() is queued on the EDT
+    private final Runnable statusUpdate = this::updateStatusBar;
+    private ActiveRenderer renderer; // draws the board in active rendering mode, else null
+
+    // Packed snapshots of the game (boards of up to Snapshot.MAX_CELLS cells, else null)
+    private Snapshot snapshots;       // the rules for packing this board's snapshots
+    private volatile long snapshot;   // the latest position, for analysis threads and spectators
+    private long[] history;           // every snapshot of this game, for undo/redo
+    private int historyCursor;        // index of the current snapshot in history
+    private int historySize;          // number of snapshots that can be redone up to
 
-    // New: Game Mode and Random for AI
+    // Record of finished games, shared by all games of this run (null if not enabled or it cannot be written).
+    // Append each finished game to this GameRecordLog file (java -Dgame.recordLog=games.ttr ...), off by default
+    public static String recordFile = System.getProperty("game.recordLog");
+    private static GameRecordLog recordLog;
+    private static boolean recordLogOpened;
+    private byte[] moves;             // cells played this game, in order
+    private boolean gameLogged;       // this game is in the log: finishing it again after undo does not add it twice
+
+    // New: Game Mode and search engine for AI
     public static GameMode currentGameMode = GameMode.PLAYER_VS_PLAYER; // Default mode, can be set by WelcomeScreen
     public static String player1Name = "Player 1"; // Default name Player 1
     public static String player2Name = "Player 2"; // Default name Player 2
     public static String userName = "You"; // Default name for player vs computer
     public static String computerName = "Computer"; // Default computer name
+    public static int boardRows = Board.DEFAULT_ROWS; // Board size and stones in a row to win,
+    public static int boardCols = Board.DEFAULT_COLS; // can be set from the command line
+    public static int winLength = Board.DEFAULT_WIN_LENGTH;
+    // Search threads for the AI; one core is left for the EDT so painting stays smooth while it thinks
+    public static int aiThreads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    private static final int MAX_AI_THREADS = 256;
+    public static boolean aiMonteCarlo = false; // Monte Carlo tree search instead of alpha-beta on larger boards
+    // Print each computer move's search statistics to stdout (java -Dgame.aiStats=true ...), off by default
+    public static boolean aiStats = Boolean.getBoolean("game.aiStats");
+    // Draw the board from a render loop (ActiveRenderer), not paintComponent; boards of up to Snapshot.MAX_CELLS cells
+    public static boolean activeRendering = false;
+
+    private ParallelSearch search;
+    private MonteCarloSearch monteCarlo; // null unless aiMonteCarlo
+    private static Tablebase tablebase; // memory-mapped tablebase for this board size, if generated
+    private static final int AI_TIME_BUDGET_MS = 800; // Thinking time limit for an AI move (easy moves take less)
+    private static final int AI_MAX_DEPTH = 64;       // Search depth limit (plies)
+    // The AI thinks on this background thread, so the UI keeps painting and taking input
+    private final ExecutorService aiExecutor = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "ai-search");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private boolean aiThinking;  // a computer move is being searched (EDT only)
+    private AtomicBoolean aiStop; // stops the search in progress
+    private int aiGeneration;     // bumped when a pending computer move becomes stale (EDT only)
+    private Ponder ponder;        // the pondering in progress during the user's turn, if any (EDT only)
+    private Window closeWatchedWindow; // the window closeListener is registered with, if any (EDT only)
+    private final WindowListener closeListener = new WindowAdapter() {
+        @Override
+        public void windowClosing(WindowEvent e) {
+            shutdownAi();
+        }
+
+        @Override
+        public void windowClosed(WindowEvent e) {
+            shutdownAi();
+        }
+    };
+    private static final int PONDER_GUESS_MS = 100;     // time to guess the user's move
+    private static final int PONDER_MAX_MS = 60_000;    // stop pondering after a minute
+    private static final long PONDER_HIT_NANOS = AI_TIME_BUDGET_MS * 500_000L; // pondered long enough to play at once
 
-    private Random random;
-    private static final int AI_MOVE_DELAY_MS = 800; // Delay for AI move in milliseconds
+    /**
+     * Search during the user's turn (Player vs Computer): guess the user's move, then search the
+     * computer's reply to it until the user moves. Runs on the AI thread; the computer's move is
+     * queued behind it on the same thread, so it sees the fields once pondering has stopped.
+     */
+    private static final class Ponder {
+        final AtomicBoolean stop = new AtomicBoolean();
+        long key;                        // position after the guessed move (0 if no guess)
+        AlphaBetaSearch.Result reply;    // best reply found so far
+    }
 
     /** Constructor to setup the UI and game components */
     public GameMain() {
-        random = new Random(); // Initialize random for AI
+        search = new ParallelSearch(aiThreads); // Initialize search engine for AI
+        if (aiMonteCarlo) {
+            monteCarlo = new MonteCarloSearch(aiThreads);
+        }
+        initGame(); // allocate the board first, the panel size depends on it
 
-        // This JPanel fires MouseEvent
-        super.addMouseListener(new MouseAdapter() {
+        // This JPanel (or the renderer's canvas on top of it) fires MouseEvent
+        MouseAdapter mouse = new MouseAdapter() {
             @Override
             public void mouseClicked(MouseEvent e) {  // mouse-clicked handler
                 int mouseX = e.getX();
                 int mouseY = e.getY();
-                // Get the row and column clicked
-                int row = mouseY / Cell.SIZE;
-                int col = mouseX / Cell.SIZE; // Corrected: removed extra / e.getY()
+                // Get the row and column clicked (-1 outside the board)
+                int cell = board.cellAt(mouseX, mouseY);
+                int row = (cell == -1) ? -1 : cell / board.getCols();
+                int col = (cell == -1) ? -1 : cell % board.getCols();
 
+                if (aiThinking) {
+                    return; // wait for the computer's move
+                }
                 if (currentState == State.PLAYING) {
-                    if (row >= 0 && row < Board.ROWS && col >= 0 && col < Board.COLS
-                            && board.cells[row][col].content == Seed.NO_SEED) {
+                    if (row >= 0 && row < board.getRows() && col >= 0 && col < board.getCols()
+                            && board.isEmpty(row, col)) {
                         // Player's move
                         makeMove(row, col);
 
                         // If in Player vs Computer mode and game is still playing, trigger computer's move
                         if (currentGameMode == GameMode.PLAYER_VS_COMPUTER && currentState == State.PLAYING) {
-                            // Use a Swing Timer to introduce a delay for the AI's move
-                            Timer timer = new Timer(AI_MOVE_DELAY_MS, new ActionListener() {
-                                @Override
-                                public void actionPerformed(ActionEvent arg0) {
-                                    performComputerMove();
-                                    repaint(); // Repaint after computer's move
-                                    ((Timer)arg0.getSource()).stop(); // Stop the timer after one execution
-                                }
-                            });
-                            timer.setRepeats(false); // Ensure it only runs once
-                            timer.start(); // Start the timer
+                            startComputerMove(); // thinks in the background, plays when done
                         }
                     }
                 } else {        // game over
                     newGame();  // restart the game
                     SoundEffect.EAT_FOOD.play(); // Play a sound for starting new game
+                    repaint();  // Refresh the whole drawing canvas; a move only repaints its cell
                 }
-                // Refresh the drawing canvas
-                repaint();  // Callback paintComponent().
             }
-        });
+        };
+        super.addMouseListener(mouse);
 
         // Setup the status bar (JLabel) to display status message
         statusBar = new JLabel();
@@ -92,21 +178,155 @@ public class GameMain extends JPanel {
         statusBar.setPreferredSize(new Dimension(300, 30));
         statusBar.setHorizontalAlignment(JLabel.LEFT);
         statusBar.setBorder(BorderFactory.createEmptyBorder(5, 10, 5, 12));
+        // Changes to the state or player update it, once per batch of changes
+        PropertyChangeListener statusListener = e -> scheduleStatusUpdate();
+        addPropertyChangeListener(PROPERTY_STATE, statusListener);
+        addPropertyChangeListener(PROPERTY_PLAYER, statusListener);
+        super.setBackground(COLOR_BG); // set its background color
 
         super.setLayout(new BorderLayout());
         super.add(statusBar, BorderLayout.PAGE_END); // same as SOUTH
-        super.setPreferredSize(new Dimension(Board.CANVAS_WIDTH, Board.CANVAS_HEIGHT + 30));
+        if (!activeRendering || snapshots == null) {
+            // The board fills the panel above the status bar, at any size (the renderer's canvas does this itself)
+            addComponentListener(new ComponentAdapter() {
+                @Override
+                public void componentResized(ComponentEvent e) {
+                    board.layout(getWidth(), getHeight() - statusBar.getHeight());
+                    repaint();
+                }
+            });
+        } else {
+            renderer = new ActiveRenderer(board, this::getSnapshot); // draws the published snapshots
+            renderer.addMouseListener(mouse);
+            super.add(renderer, BorderLayout.CENTER);
+            // F3 shows/hides the frame-time overlay
+            getInputMap(WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke("F3"), "overlay");
+            getActionMap().put("overlay", new AbstractAction() {
+                @Override
+                public void actionPerformed(ActionEvent e) {
+                    renderer.toggleOverlay();
+                }
+            });
+        }
+        super.setPreferredSize(new Dimension(board.getCanvasWidth(), board.getCanvasHeight() + 30));
         // account for statusBar in height
         super.setBorder(BorderFactory.createLineBorder(COLOR_BG_STATUS, 2, false));
 
+        // Ctrl+Z / Ctrl+Y to undo / redo moves
+        getInputMap(WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke("control Z"), "undo");
+        getInputMap(WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke("control Y"), "redo");
+        getActionMap().put("undo", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                undo();
+            }
+        });
+        getActionMap().put("redo", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                redo();
+            }
+        });
+
         // Set up Game
-        initGame();
         newGame();
     }
 
+    /**
+     * Once in a window, stop the AI threads when the window closes. addNotify() runs again each time
+     * the panel is re-added, so the listener is registered once per window (and moves with the panel).
+     */
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        Window window = SwingUtilities.getWindowAncestor(this);
+        if (window != closeWatchedWindow) {
+            if (closeWatchedWindow != null) {
+                closeWatchedWindow.removeWindowListener(closeListener);
+            }
+            if (window != null) {
+                window.addWindowListener(closeListener);
+            }
+            closeWatchedWindow = window;
+        }
+    }
+
+    /** Returns the latest snapshot of the game; safe to call from any thread */
+    public long getSnapshot() {
+        return snapshot;
+    }
+
+    /** Take back moves: one in Player vs Player, back to the user's turn in Player vs Computer */
+    private void undo() {
+        if (snapshots == null || historyCursor == 0) {
+            return;
+        }
+        cancelComputerMove();
+        do {
+            --historyCursor;
+        } while (historyCursor > 0 && !isUsersTurn(history[historyCursor]));
+        restore(history[historyCursor]);
+        resumeAi();
+    }
+
+    /** Replay moves taken back by undo() */
+    private void redo() {
+        if (snapshots == null || historyCursor == historySize - 1) {
+            return;
+        }
+        cancelComputerMove();
+        do {
+            ++historyCursor;
+        } while (historyCursor < historySize - 1 && !isUsersTurn(history[historyCursor])
+                && Snapshot.state(history[historyCursor]) == State.PLAYING);
+        restore(history[historyCursor]);
+        resumeAi();
+    }
+
+    /** After undo/redo in Player vs Computer: the computer moves if it is its turn, else it ponders */
+    private void resumeAi() {
+        if (currentGameMode == GameMode.PLAYER_VS_COMPUTER && currentState == State.PLAYING
+                && currentPlayer == Seed.NOUGHT) {
+            startComputerMove();
+        } else {
+            startPondering();
+        }
+    }
+
+    /** In Player vs Computer, only positions with the user (X) to move are worth stopping at */
+    private static boolean isUsersTurn(long position) {
+        return currentGameMode != GameMode.PLAYER_VS_COMPUTER
+                || Snapshot.sideToMove(position) == GameEngine.CROSS;
+    }
+
+    /** Set the board, state and player from a snapshot */
+    private void restore(long position) {
+        snapshots.restore(position, board.engine);
+        setCurrentState(Snapshot.state(position));
+        setCurrentPlayer((Snapshot.sideToMove(position) == GameEngine.CROSS) ? Seed.CROSS : Seed.NOUGHT);
+        snapshot = position;
+        repaint();
+    }
+
+    /** Publish the snapshot after a move and record it for undo/redo (dropping any redo) */
+    private void record(long position) {
+        snapshot = position;
+        history[++historyCursor] = position;
+        historySize = historyCursor + 1;
+    }
+
     /** Handles making a move for the current player at the given row and column. */
     private void makeMove(int row, int col) {
-        currentState = board.stepGame(currentPlayer, row, col);
+        int cell = board.engine.cellOf(row, col);
+        setCurrentState(board.stepGame(currentPlayer, row, col));
+        moves[board.engine.moveCount() - 1] = (byte) cell;
+        if (snapshots != null) {
+            record(snapshots.play(snapshot, cell));
+        }
+        if (currentState != State.PLAYING && !gameLogged) {
+            gameLogged = true;
+            logGame();
+        }
 
         // Play appropriate sound clip after the move
         if (currentState == State.PLAYING) {
@@ -116,120 +336,281 @@ public class GameMain extends JPanel {
         }
 
         // Switch player
-        currentPlayer = (currentPlayer == Seed.CROSS) ? Seed.NOUGHT : Seed.CROSS;
+        setCurrentPlayer((currentPlayer == Seed.CROSS) ? Seed.NOUGHT : Seed.CROSS);
+        repaintCell(row, col);
     }
 
-    /** Performs the computer's move (simple AI). */
-    private void performComputerMove() {
-        // Hanya bergerak jika giliran komputer dan game masih berjalan
-        // PERBAIKAN: Ubah kondisi currentPlayer != Seed.NOUGHT menjadi currentPlayer == Seed.CROSS
-        if (currentState != State.PLAYING || currentPlayer == Seed.CROSS) {
+    /** Set the game state, telling the listeners if it changed */
+    private void setCurrentState(State state) {
+        State old = currentState;
+        currentState = state;
+        firePropertyChange(PROPERTY_STATE, old, state);
+    }
+
+    /** Set the player to move, telling the listeners if it changed */
+    private void setCurrentPlayer(Seed player) {
+        Seed old = currentPlayer;
+        currentPlayer = player;
+        firePropertyChange(PROPERTY_PLAYER, old, player);
+    }
+
+    /** Repaint just the cell at (row, col), not the whole board */
+    private void repaintCell(int row, int col) {
+        Board.Geometry geometry = board.getGeometry();
+        repaint(geometry.x + col * geometry.cellSize, geometry.y + row * geometry.cellSize,
+                geometry.cellSize, geometry.cellSize);
+    }
+
+    /** Append the finished game to the game record log */
+    private void logGame() {
+        GameRecordLog log = openRecordLog();
+        if (log == null || board.engine.cellCount() > GameRecordLog.MAX_CELLS) {
             return;
         }
+        boolean vsComputer = currentGameMode == GameMode.PLAYER_VS_COMPUTER;
+        try {
+            log.append(currentGameMode, currentState, board.getRows(), board.getCols(), board.winLength,
+                    GameRecordLog.encodeName(vsComputer ? userName : player1Name),
+                    GameRecordLog.encodeName(vsComputer ? computerName : player2Name),
+                    moves, board.engine.moveCount());
+        } catch (IOException e) {
+            System.err.println("Error writing game record log: " + e.getMessage());
+        }
+    }
 
-        int bestRow = -1, bestCol = -1;
-
-        // Try to win or block opponent
-        for (int i = 0; i < 2; i++) { // i=0 for current player (computer), i=1 for opponent
-            Seed checkSeed = (i == 0) ? currentPlayer : (currentPlayer == Seed.CROSS ? Seed.NOUGHT : Seed.CROSS);
-            for (int row = 0; row < Board.ROWS; row++) {
-                for (int col = 0; col < Board.COLS; col++) {
-                    if (board.cells[row][col].content == Seed.NO_SEED) {
-                        board.cells[row][col].content = checkSeed; // Temporarily make a move
-                        if (board.hasWon(checkSeed, row, col)) {
-                            bestRow = row;
-                            bestCol = col;
-                            board.cells[row][col].content = Seed.NO_SEED; // Undo temp move
-                            makeMove(bestRow, bestCol); // Make the actual move
-                            return; // Move found, exit
-                        }
-                        board.cells[row][col].content = Seed.NO_SEED; // Undo temp move
+    /** Returns the game record log, opened on first use and closed at exit; null if not enabled or it cannot be opened */
+    private static synchronized GameRecordLog openRecordLog() {
+        if (!recordLogOpened && recordFile != null) {
+            recordLogOpened = true;
+            try {
+                recordLog = GameRecordLog.open(Path.of(recordFile));
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    try {
+                        recordLog.close();
+                    } catch (IOException e) {
+                        System.err.println("Error closing game record log: " + e.getMessage());
                     }
-                }
+                }));
+            } catch (IOException e) {
+                System.err.println("Game record log disabled: " + e.getMessage());
             }
         }
+        return recordLog;
+    }
 
-        // If no winning/blocking move, try to take the center
-        if (bestRow == -1 && board.cells[1][1].content == Seed.NO_SEED) {
-            bestRow = 1;
-            bestCol = 1;
+    /** Starts the computer's move: searched on the AI thread within AI_TIME_BUDGET_MS, then played on the EDT */
+    private void startComputerMove() {
+        // Hanya bergerak jika giliran komputer dan game masih berjalan
+        // PERBAIKAN: Ubah kondisi currentPlayer != Seed.NOUGHT menjadi currentPlayer == Seed.CROSS
+        if (currentState != State.PLAYING || currentPlayer == Seed.CROSS || aiThinking
+                || aiExecutor.isShutdown()) {
+            return;
         }
-        // If center is taken, try a corner
-        else {
-            int[][] corners = {{0, 0}, {0, 2}, {2, 0}, {2, 2}};
-            List<Point> availableCorners = new ArrayList<>();
-            for (int[] corner : corners) {
-                if (board.cells[corner[0]][corner[1]].content == Seed.NO_SEED) {
-                    availableCorners.add(new Point(corner[0], corner[1]));
+        aiThinking = true;
+        AtomicBoolean stop = aiStop = new AtomicBoolean();
+        int generation = ++aiGeneration;
+        GameEngine position = board.engine.copy(); // the search plays on its copy, not on the painted board
+        int side = Board.sideOf(currentPlayer);
+        Ponder pondered = ponder;
+        stopPondering();
+        aiExecutor.execute(() -> {
+            int move = -1;
+            try {
+                if (pondered != null && pondered.reply != null && pondered.key == position.key()
+                        && position.isEmpty(pondered.reply.move)
+                        && (pondered.reply.isProven() || pondered.reply.elapsedNanos >= PONDER_HIT_NANOS)) {
+                    if (aiStats) {
+                        System.out.println("AI (ponder hit): " + pondered.reply);
+                    }
+                    move = pondered.reply.move; // the user played the guessed move: the reply is ready
+                } else {
+                    move = computeMove(position, side, stop); // a miss still finds the pondered table entries
                 }
+            } finally {
+                int chosen = move;
+                SwingUtilities.invokeLater(() -> finishComputerMove(generation, chosen));
             }
-            if (!availableCorners.isEmpty()) {
-                Point move = availableCorners.get(random.nextInt(availableCorners.size()));
-                bestRow = move.x;
-                bestCol = move.y;
-            }
+        });
+    }
+
+    /** Plays the computer's move found by startComputerMove() (on the EDT), unless it has gone stale */
+    private void finishComputerMove(int generation, int move) {
+        if (generation != aiGeneration) {
+            return; // cancelled: new game, undo/redo or window closed
         }
+        aiThinking = false;
+        // Make the chosen move (if a valid move was found)
+        if (move != -1 && currentState == State.PLAYING && currentPlayer == Seed.NOUGHT) {
+            makeMove(move / board.getCols(), move % board.getCols());
+        }
+        startPondering();
+    }
 
-        // If no strategic move, take any available cell
-        if (bestRow == -1) {
-            List<Point> emptyCells = new ArrayList<>();
-            for (int row = 0; row < Board.ROWS; row++) {
-                for (int col = 0; col < Board.COLS; col++) {
-                    if (board.cells[row][col].content == Seed.NO_SEED) {
-                        emptyCells.add(new Point(row, col));
-                    }
-                }
+    /** During the user's turn against the computer, search ahead on the AI thread (see Ponder) */
+    private void startPondering() {
+        stopPondering();
+        if (currentGameMode != GameMode.PLAYER_VS_COMPUTER || currentState != State.PLAYING
+                || currentPlayer != Seed.CROSS || aiExecutor.isShutdown() || monteCarlo != null
+                || answersInstantly(board.engine)) {
+            return; // not the user's turn, or the computer answers instantly anyway
+        }
+        Ponder pondering = ponder = new Ponder();
+        GameEngine position = board.engine.copy();
+        int userSide = Board.sideOf(Seed.CROSS);
+        aiExecutor.execute(() -> {
+            int guess = search.bestMove(position, userSide, AI_MAX_DEPTH, PONDER_GUESS_MS, pondering.stop);
+            if (guess == -1 || pondering.stop.get() || position.play(userSide, guess) != State.PLAYING) {
+                return;
             }
-            if (!emptyCells.isEmpty()) {
-                Point move = emptyCells.get(random.nextInt(emptyCells.size()));
-                bestRow = move.x;
-                bestCol = move.y;
+            pondering.key = position.key();
+            pondering.reply = search.search(position, GameEngine.opponent(userSide), AI_MAX_DEPTH,
+                    PONDER_MAX_MS, pondering.stop);
+        });
+    }
+
+    /** Stop pondering, if it is running */
+    private void stopPondering() {
+        if (ponder != null) {
+            ponder.stop.set(true);
+            ponder = null;
+        }
+    }
+
+    /** Stop the computer's search in progress, if any, and drop its move */
+    private void cancelComputerMove() {
+        stopPondering();
+        if (aiThinking) {
+            aiStop.set(true);
+            aiThinking = false;
+            ++aiGeneration;
+        }
+    }
+
+    /** Stop the AI threads for good (the window is closing) */
+    private void shutdownAi() {
+        cancelComputerMove();
+        aiExecutor.shutdownNow();
+        search.shutdown();
+        if (monteCarlo != null) {
+            monteCarlo.shutdown();
+        }
+    }
+
+    /** Returns the computer's move (table lookup on 3x3, else tablebase, alpha-beta or Monte Carlo search) */
+    private int computeMove(GameEngine position, int side, AtomicBoolean stop) {
+        if (answersInstantly(position)) {
+            return chooseComputerMove(position, side, search, stop);
+        }
+        if (monteCarlo != null) {
+            MonteCarloSearch.Result result = monteCarlo.search(position, side, AI_TIME_BUDGET_MS, stop);
+            if (aiStats) {
+                System.out.println("AI (MCTS): " + result);
             }
+            return result.move;
+        }
+        int move = chooseComputerMove(position, side, search, stop);
+        if (aiStats) {
+            System.out.println("AI: " + search.lastResult() + "; table " + search.table());
         }
+        return move;
+    }
 
-        // Make the chosen move (if a valid move was found)
-        if (bestRow != -1) {
-            makeMove(bestRow, bestCol);
+    /** Returns true if the computer's move is a table lookup (3x3, or a board the tablebase covers) */
+    private static boolean answersInstantly(GameEngine engine) {
+        return engine instanceof BitBoard || (tablebase != null && tablebase.covers(engine));
+    }
+
+    /** Returns the computer's move for the side to move: table lookup on 3x3, else alpha-beta search */
+    static int chooseComputerMove(GameEngine engine, int side, AlphaBetaSearch search) {
+        return chooseComputerMove(engine, side, search, null);
+    }
+
+    /**
+     * Same as chooseComputerMove(engine, side, search), stopping the search when stop is set.
+     * Allocation-free: the lookups and the search only use buffers preallocated for the board.
+     */
+    static int chooseComputerMove(GameEngine engine, int side, AlphaBetaSearch search, AtomicBoolean stop) {
+        if (engine instanceof BitBoard) {
+            // Classic 3x3: perfect play straight from the precomputed table
+            return PerfectPlay.bestMove((BitBoard) engine);
         }
+        if (tablebase != null && tablebase.covers(engine)) {
+            return tablebase.bestMove(engine); // small boards: perfect play from the tablebase
+        }
+        return search.bestMove(engine, side, AI_MAX_DEPTH, AI_TIME_BUDGET_MS, stop);
     }
 
+    /**
+     * Memory-map the tablebase file for the board size (e.g. tablebase-4x4k4.ttb in the
+     * working directory), generated with: java Chapter5.engine.Tablebase 4 4 4 tablebase-4x4k4.ttb
+     */
+    private static void loadTablebase() {
+        if (tablebase != null || boardRows * boardCols > Tablebase.MAX_CELLS) {
+            return;
+        }
+        Path file = Path.of("tablebase-" + boardRows + "x" + boardCols + "k" + winLength + ".ttb");
+        if (Files.exists(file)) {
+            try {
+                tablebase = Tablebase.load(file);
+            } catch (IOException e) {
+                System.err.println("Error loading tablebase " + file + ": " + e.getMessage());
+            }
+        }
+    }
 
     /** Initialize the game (run once) */
     public void initGame() {
-        board = new Board();  // allocate the game-board
+        board = new Board(boardRows, boardCols, winLength);  // allocate the game-board
+        loadTablebase();
+        if (Snapshot.fits(boardRows, boardCols)) {
+            snapshots = new Snapshot(boardRows, boardCols, winLength);
+            history = new long[boardRows * boardCols + 1];
+        }
+        moves = new byte[boardRows * boardCols];
     }
 
     /** Reset the game-board contents and the current-state, ready for new game */
     public void newGame() {
+        cancelComputerMove(); // a search of the old game must not play into the new one
         board.newGame(); // Use Board's newGame method to clear cells
-        currentPlayer = Seed.CROSS;    // 'X' plays first
-        currentState = State.PLAYING;  // ready to play
+        setCurrentPlayer(Seed.CROSS);    // 'X' plays first
+        setCurrentState(State.PLAYING);  // ready to play
+        gameLogged = false;
+        if (snapshots != null) {
+            snapshot = snapshots.empty();
+            history[0] = snapshot;
+            historyCursor = 0;
+            historySize = 1;
+        }
 
         // If computer is the first player, make its move
         if (currentGameMode == GameMode.PLAYER_VS_COMPUTER && currentPlayer == Seed.NOUGHT) {
-            // Introduce delay for AI's first move as well
-            Timer timer = new Timer(AI_MOVE_DELAY_MS, new ActionListener() {
-                @Override
-                public void actionPerformed(ActionEvent arg0) {
-                    performComputerMove();
-                    repaint();
-                    ((Timer)arg0.getSource()).stop();
-                }
-            });
-            timer.setRepeats(false);
-            timer.start();
+            startComputerMove();
+        } else {
+            startPondering();
         }
     }
 
-    /** Custom painting codes on this JPanel */
+    /** Custom painting codes on this JPanel; only draws (the status bar follows the game by itself) */
     @Override
     public void paintComponent(Graphics g) {  // Callback via repaint()
         super.paintComponent(g);
-        setBackground(COLOR_BG); // set its background color
+        if (renderer == null) {
+            board.paint(g);  // ask the game board to paint itself (else the renderer's loop draws it)
+        }
+    }
 
-        board.paint(g);  // ask the game board to paint itself
+    /** Queue one status bar update for however many state/player changes happen before it runs */
+    private void scheduleStatusUpdate() {
+        if (!statusUpdatePending) {
+            statusUpdatePending = true;
+            SwingUtilities.invokeLater(statusUpdate);
+        }
+    }
 
-        // Print status-bar message
+    /** Print the status-bar message for the current state and player */
+    private void updateStatusBar() {
+        statusUpdatePending = false;
         if (currentState == State.PLAYING) {
             statusBar.setForeground(Color.BLACK);
             String turnText;
@@ -257,6 +638,39 @@ public class GameMain extends JPanel {
 
     /** The entry "main" method */
     public static void main(String[] args) {
+        // Optional board size: rows cols winLength (e.g. "7 7 5"), default 3x3, then AI search threads;
+        // then options: "mcts" selects Monte Carlo tree search for the AI, "active" active rendering
+        while (args.length > 0 && (args[args.length - 1].equals("mcts") || args[args.length - 1].equals("active"))) {
+            if (args[args.length - 1].equals("mcts")) {
+                aiMonteCarlo = true;
+            } else {
+                activeRendering = true;
+            }
+            args = Arrays.copyOf(args, args.length - 1);
+        }
+        try {
+            if (args.length >= 3) {
+                boardRows = Integer.parseInt(args[0]);
+                boardCols = Integer.parseInt(args[1]);
+                winLength = Integer.parseInt(args[2]);
+                GameEngine.create(boardRows, boardCols, winLength); // rejects invalid and oversize boards
+            }
+            if (args.length >= 4) {
+                aiThreads = Integer.parseInt(args[3]);
+                if (aiThreads < 1 || aiThreads > MAX_AI_THREADS) {
+                    throw new IllegalArgumentException("AI threads must be 1 to " + MAX_AI_THREADS);
+                }
+            }
+        } catch (IllegalArgumentException e) { // including NumberFormatException
+            System.err.println(e.getMessage());
+            System.err.println("Usage: java Chapter5.GameMain [rows cols winLength [aiThreads]] [mcts] [active]");
+            System.exit(1);
+        }
+        if (activeRendering && !Snapshot.fits(boardRows, boardCols)) {
+            System.err.println("Active rendering needs a board of at most " + Snapshot.MAX_CELLS
+                    + " cells; painting in paintComponent instead");
+            activeRendering = false;
+        }
         // Run GUI construction codes in Event-Dispatching thread for thread safety
         javax.swing.SwingUtilities.invokeLater(new Runnable() {
             public void run() {
@@ -1,9 +0,0 @@
-package Chapter5;
-
-/**
- * The GameMode enum describes the different game modes available.
- */
-public enum GameMode {
-    PLAYER_VS_PLAYER,
-    PLAYER_VS_COMPUTER
-}
\ No newline at end of file
@@ -1,5 +1,7 @@
 package Chapter5;
 
+import Chapter5.engine.GameMode;
+
 import java.awt.*;
 import java.awt.event.*;
 import javax.swing.*;
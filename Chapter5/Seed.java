@@ -1,8 +1,9 @@
 package Chapter5;
 
 import java.awt.Image;
+import java.io.IOException;
 import java.net.URL;
-import javax.swing.ImageIcon;
+import javax.imageio.ImageIO;
 /**
  * This enum is used by:
  * 1. Player: takes value of CROSS or NOUGHT
@@ -10,8 +11,8 @@ import javax.swing.ImageIcon;
  *
  * We also attach a display image icon (text or image) for the items.
  * and define the related variable/constructor/getter.
- * To draw the image:
- * g.drawImage(content.getImage(), x, y, width, height, null);
+ * The image is decoded once, here; the board draws it through a SeedAtlas,
+ * pre-scaled to its size on screen. getImage() is null if it failed to load.
  *
  * Ideally, we should define two enums with inheritance, which is,
  * however, not supported.
@@ -30,17 +31,20 @@ public enum Seed {   // to save as "Seed.java"
         this.displayName = name;
 
         if (imageFilename != null) {
-            // Use getResourceAsStream for better JAR file handling
-            // Or getClass().getClassLoader().getResource for relative paths
+            // getClass().getClassLoader().getResource works for relative paths and in JAR files
             URL imgURL = getClass().getClassLoader().getResource(imageFilename);
-            ImageIcon icon = null;
-            if (imgURL != null) {
-                icon = new ImageIcon(imgURL);
-                //System.out.println(icon);  // debugging
-            } else {
+            if (imgURL == null) {
                 System.err.println("Couldn't find file " + imageFilename + ". Make sure 'images' folder is in the classpath.");
+            } else {
+                try {
+                    img = ImageIO.read(imgURL); // decoded now, fully, not in the background like ImageIcon
+                } catch (IOException e) {
+                    System.err.println("Error loading " + imageFilename + ": " + e.getMessage());
+                }
+                if (img == null) {
+                    System.err.println("Couldn't decode " + imageFilename + ".");
+                }
             }
-            img = icon.getImage();
         }
     }
 
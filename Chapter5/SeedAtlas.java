@@ -0,0 +1,91 @@
+package Chapter5;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * The seed images, pre-scaled to their exact size on screen (in device pixels,
+ * so at the display's HiDPI scale) and packed side by side into one image
+ * compatible with the display. Drawing a seed is then a 1:1 blit of its slot
+ * instead of scaling the full-size source image on every paint.
+ *
+ * A seed whose image could not be loaded gets a drawn symbol in its slot.
+ * An atlas is for one seed size and scale; Board keeps one per size and scale.
+ */
+public class SeedAtlas {
+    /** Colors of the drawn symbols, used when a seed image is missing */
+    public static final Color COLOR_CROSS = new Color(211, 47, 47);
+    public static final Color COLOR_NOUGHT = new Color(25, 118, 210);
+
+    private static final Seed[] SEEDS = {Seed.CROSS, Seed.NOUGHT}; // slot order in the atlas
+
+    /** Seed size in user space (what paint code asks for) */
+    private final int size;
+    /** The atlas, and its slot size in device pixels */
+    private final BufferedImage image;
+    private final int pixels;
+
+    /**
+     * Constructor for seeds drawn size-by-size (in user space) at the HiDPI scale,
+     * in an image compatible with the device (if not null)
+     */
+    public SeedAtlas(int size, double scale, GraphicsConfiguration config) {
+        this.size = size;
+        pixels = Math.max(1, (int) Math.ceil(size * scale));
+        image = (config != null)
+                ? config.createCompatibleImage(pixels * SEEDS.length, pixels, Transparency.TRANSLUCENT)
+                : new BufferedImage(pixels * SEEDS.length, pixels, BufferedImage.TYPE_INT_ARGB); // no device yet
+        Graphics2D g2d = image.createGraphics();
+        for (int slot = 0; slot < SEEDS.length; ++slot) {
+            Image source = SEEDS[slot].getImage();
+            if (source != null) {
+                g2d.drawImage(downscale(source, pixels), slot * pixels, 0, null);
+            } else {
+                drawSymbol(g2d, SEEDS[slot], slot * pixels, pixels);
+            }
+        }
+        g2d.dispose();
+    }
+
+    /** Draw the seed (CROSS or NOUGHT) size-by-size with its top-left corner at (x, y) */
+    public void draw(Graphics g, Seed seed, int x, int y) {
+        int sourceX = (seed == Seed.CROSS) ? 0 : pixels;
+        // size user-space pixels map to pixels device pixels: no scaling left to do
+        g.drawImage(image, x, y, x + size, y + size, sourceX, 0, sourceX + pixels, pixels, null);
+    }
+
+    /** Returns the image scaled to pixels-by-pixels; halves at a time, so large images keep their detail */
+    private static BufferedImage downscale(Image source, int pixels) {
+        int width = source.getWidth(null);
+        int height = source.getHeight(null);
+        BufferedImage scaled = null;
+        do {
+            width = Math.max(pixels, width / 2);
+            height = Math.max(pixels, height / 2);
+            BufferedImage step = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g2d = step.createGraphics();
+            g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+            g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g2d.drawImage((scaled != null) ? scaled : source, 0, 0, width, height, null);
+            g2d.dispose();
+            scaled = step;
+        } while (width > pixels || height > pixels);
+        return scaled;
+    }
+
+    /** Draw a plain X or O into the pixels-wide slot at x */
+    private static void drawSymbol(Graphics2D g2d, Seed seed, int x, int pixels) {
+        int stroke = Math.max(1, pixels / 8);
+        int inset = stroke / 2 + 1;
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2d.setStroke(new BasicStroke(stroke, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+        if (seed == Seed.CROSS) {
+            g2d.setColor(COLOR_CROSS);
+            g2d.drawLine(x + inset, inset, x + pixels - inset, pixels - inset);
+            g2d.drawLine(x + pixels - inset, inset, x + inset, pixels - inset);
+        } else {
+            g2d.setColor(COLOR_NOUGHT);
+            g2d.drawOval(x + inset, inset, pixels - 2 * inset, pixels - 2 * inset);
+        }
+    }
+}
@@ -0,0 +1,423 @@
+package Chapter5.engine;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The AlphaBetaSearch class is the computer player's search engine:
+ * negamax with alpha-beta pruning and iterative deepening, a hash-keyed
+ * transposition table, and move ordering (table move, immediate wins and
+ * blocks, history heuristic, then closeness to the centre).
+ *
+ * It works on any GameEngine. The engine is played on and taken back in
+ * place, so it is left exactly as it was given. On boards larger than 5x5
+ * only cells near existing stones are searched.
+ */
+public class AlphaBetaSearch {
+    /** Score of a won position; a win in n plies scores WIN - n */
+    public static final int WIN = 1_000_000;
+    /** Scores beyond this are proven wins or losses */
+    public static final int WIN_THRESHOLD = WIN - Zobrist.MAX_CELLS;
+    private static final int INFINITY = WIN + 1;
+    /** Boards with more cells than this only search cells near existing stones (also MonteCarloSearch) */
+    static final int NEAR_ONLY_CELLS = 25;
+    private static final int NEAR_DISTANCE = 2;
+    /** Check the clock every 1024 nodes */
+    private static final int CLOCK_MASK = 0x3FF;
+
+    /** The outcome of a search */
+    public static class Result {
+        /** Best cell found, or -1 if there is no legal move */
+        public final int move;
+        /** Score of the move for the side to move (WIN - n: wins in n plies) */
+        public final int score;
+        /** Deepest iteration completed */
+        public final int depth;
+        public final long nodes;
+        public final long elapsedNanos;
+
+        Result(int move, int score, int depth, long nodes, long elapsedNanos) {
+            this.move = move;
+            this.score = score;
+            this.depth = depth;
+            this.nodes = nodes;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /** Returns true if the score is a proven win or loss */
+        public boolean isProven() {
+            return Math.abs(score) >= WIN_THRESHOLD;
+        }
+
+        /** Search throughput */
+        public long nodesPerSecond() {
+            return nodes * 1_000_000_000L / Math.max(1, elapsedNanos);
+        }
+
+        @Override
+        public String toString() {
+            return "move " + move + " score " + score + " depth " + depth + ", "
+                    + nodes + " nodes in " + elapsedNanos / 1_000_000 + " ms ("
+                    + nodesPerSecond() + " nodes/s)";
+        }
+    }
+
+    private final TranspositionTable table;
+    /** 0 for a stand-alone search; a ParallelSearch helper's number, to vary its depths and move order */
+    private final int helper;
+    /** Clear the table when the board size changes (off when the table's owner does it) */
+    private final boolean clearsTable;
+
+    // Search state, valid during search()
+    private GameEngine engine;
+    private AtomicBoolean stop;
+    private long nodes;
+    private long deadline;
+    private boolean aborted;
+    private int rootBest;
+
+    // Buffers, reallocated when the board size changes
+    private int rows, cols, cellCount, winLength;
+    private int[][] moves;     // candidate moves per ply
+    private int[][] order;     // ordering scores per ply
+    private int[][] history;   // history heuristic [side][cell]
+    private int[] windowStart; // every k-in-a-row window: first cell and step
+    private int[] windowStep;
+    private int[] jitter;      // per-cell ordering offsets of a helper, all 0 otherwise
+
+    // Outcome of the last search, kept in fields so bestMove() does not allocate a Result
+    int lastMove = -1, lastScore, lastDepth;
+    long lastNodes, lastElapsedNanos;
+
+    /** Constructor with a transposition table of 2^20 entries */
+    public AlphaBetaSearch() {
+        this(new TranspositionTable(20));
+    }
+
+    public AlphaBetaSearch(TranspositionTable table) {
+        this(table, 0, true);
+    }
+
+    AlphaBetaSearch(TranspositionTable table, int helper, boolean clearsTable) {
+        this.table = table;
+        this.helper = helper;
+        this.clearsTable = clearsTable;
+    }
+
+    /** The transposition table, which may be shared with other searches */
+    public TranspositionTable table() {
+        return table;
+    }
+
+    /**
+     * Search the best move for the side to move, deepening one ply at a time up to
+     * maxDepth plies or until timeBudgetMillis runs out, whichever comes first; the
+     * budget is a hard limit and the best move of the last completed iteration is returned.
+     * Answers at once when the move is forced (an immediate win, the only block of the
+     * opponent's win, or the last empty cell). Stops early once the result is proven or the whole
+     * game tree has been searched, and does not start an iteration after half the
+     * budget is gone (it would almost surely not finish).
+     */
+    public Result search(GameEngine engine, int side, int maxDepth, long timeBudgetMillis) {
+        return search(engine, side, maxDepth, timeBudgetMillis, null);
+    }
+
+    /**
+     * Same as search(engine, side, maxDepth, timeBudgetMillis), and also stops as soon as the
+     * stop flag (if not null) is set, e.g. by another thread; the best move so far is returned.
+     */
+    public Result search(GameEngine engine, int side, int maxDepth, long timeBudgetMillis, AtomicBoolean stop) {
+        bestMove(engine, side, maxDepth, timeBudgetMillis, stop);
+        return lastResult();
+    }
+
+    /** Same as search(), returning only the move (or -1); does not allocate, see lastResult() for the rest */
+    public int bestMove(GameEngine engine, int side, int maxDepth, long timeBudgetMillis) {
+        return bestMove(engine, side, maxDepth, timeBudgetMillis, null);
+    }
+
+    /** Same as search(engine, side, maxDepth, timeBudgetMillis, stop), returning only the move; does not allocate */
+    public int bestMove(GameEngine engine, int side, int maxDepth, long timeBudgetMillis, AtomicBoolean stop) {
+        long start = System.nanoTime();
+        this.engine = engine;
+        this.stop = stop;
+        prepare(engine);
+        nodes = 0;
+        deadline = start + timeBudgetMillis * 1_000_000L;
+        aborted = false;
+
+        int bestMove = -1;
+        int bestScore = 0;
+        int completed = 0;
+        int emptyCells = cellCount - engine.moveCount();
+        int forced = (emptyCells > 0) ? forcedMove(side) : -1;
+        if (forced != -1) {
+            this.engine = null;
+            this.stop = null;
+            return finish(forced, engine.wouldWin(side, forced) ? WIN - 1 : 0, 0, start);
+        }
+        // Odd helpers start one ply deeper, so helpers and the main search spread over two depths
+        for (int depth = 1 + (helper & 1); depth <= Math.min(maxDepth, emptyCells); ++depth) {
+            rootBest = -1;
+            int score = negamax(side, depth, -INFINITY, INFINITY, 0);
+            if (aborted) {
+                break;
+            }
+            bestMove = rootBest;
+            bestScore = score;
+            completed = depth;
+            if (Math.abs(score) >= WIN_THRESHOLD) {
+                break; // proven win or loss, deeper search cannot change it
+            }
+            if (System.nanoTime() - start > (deadline - start) / 2) {
+                break; // the next, deeper iteration would run out of time
+            }
+        }
+        if (bestMove == -1 && emptyCells > 0) {
+            // Out of time before the first iteration finished: take the best-ordered move
+            generate(side, 0, rootBest);
+            bestMove = moves[0][0];
+        }
+        this.engine = null;
+        this.stop = null;
+        return finish(bestMove, bestScore, completed, start);
+    }
+
+    /** Record the outcome of the search; returns the move */
+    private int finish(int move, int score, int depth, long start) {
+        lastMove = move;
+        lastScore = score;
+        lastDepth = depth;
+        lastNodes = nodes;
+        lastElapsedNanos = System.nanoTime() - start;
+        return move;
+    }
+
+    /** Returns the outcome of the last search */
+    public Result lastResult() {
+        return new Result(lastMove, lastScore, lastDepth, lastNodes, lastElapsedNanos);
+    }
+
+    /** Returns the move if it is forced: a win now, the only cell stopping the opponent's win, or the last empty cell; else -1 */
+    private int forcedMove(int side) {
+        int opponent = GameEngine.opponent(side);
+        int block = -1;
+        int blocks = 0;
+        int empty = -1;
+        for (int cell = 0; cell < cellCount; ++cell) {
+            if (!engine.isEmpty(cell)) continue;
+            empty = cell;
+            if (engine.wouldWin(side, cell)) return cell;
+            if (engine.wouldWin(opponent, cell)) {
+                block = cell;
+                ++blocks;
+            }
+        }
+        if (blocks == 1) {
+            return block;
+        }
+        return (engine.moveCount() == cellCount - 1) ? empty : -1;
+    }
+
+    /** Negamax with alpha-beta: returns the score of the position for the side to move */
+    private int negamax(int side, int depth, int alpha, int beta, int ply) {
+        if ((++nodes & CLOCK_MASK) == 0
+                && (System.nanoTime() > deadline || stop != null && stop.get())) {
+            aborted = true;
+        }
+        if (aborted) {
+            return 0;
+        }
+
+        int alphaOrig = alpha;
+        int tableMove = -1;
+        long entry = table.probe(engine.key());
+        if (entry != 0) {
+            tableMove = TranspositionTable.move(entry);
+            if (ply > 0 && TranspositionTable.depth(entry) >= depth) {
+                int score = fromTable(TranspositionTable.score(entry), ply);
+                switch (TranspositionTable.bound(entry)) {
+                    case TranspositionTable.EXACT: return score;
+                    case TranspositionTable.LOWER: alpha = Math.max(alpha, score); break;
+                    case TranspositionTable.UPPER: beta = Math.min(beta, score); break;
+                }
+                if (alpha >= beta) {
+                    return score;
+                }
+            }
+        }
+        if (depth == 0) {
+            return evaluate(side);
+        }
+
+        int opponent = GameEngine.opponent(side);
+        int count = generate(side, ply, tableMove);
+        int best = -INFINITY;
+        int bestMove = -1;
+        for (int i = 0; i < count; ++i) {
+            int cell = selectNext(ply, i, count);
+            State state = engine.play(side, cell);
+            int score;
+            if (state == State.PLAYING) {
+                score = -negamax(opponent, depth - 1, -beta, -alpha, ply + 1);
+            } else if (state == State.DRAW) {
+                score = 0;
+            } else {
+                score = WIN - (ply + 1); // this move wins
+            }
+            engine.remove(side, cell);
+            if (aborted) {
+                return 0;
+            }
+
+            if (score > best) {
+                best = score;
+                bestMove = cell;
+                if (ply == 0) rootBest = cell;
+            }
+            if (score > alpha) {
+                alpha = score;
+            }
+            if (alpha >= beta) {
+                history[side][cell] += depth * depth;
+                break; // cut-off
+            }
+        }
+
+        int bound = (best <= alphaOrig) ? TranspositionTable.UPPER
+                : (best >= beta) ? TranspositionTable.LOWER : TranspositionTable.EXACT;
+        table.store(engine.key(), toTable(best, ply), depth, bound, bestMove);
+        return best;
+    }
+
+    /** Mate scores are stored relative to the position, not the root */
+    private static int toTable(int score, int ply) {
+        if (score >= WIN_THRESHOLD) return score + ply;
+        if (score <= -WIN_THRESHOLD) return score - ply;
+        return score;
+    }
+
+    private static int fromTable(int score, int ply) {
+        if (score >= WIN_THRESHOLD) return score - ply;
+        if (score <= -WIN_THRESHOLD) return score + ply;
+        return score;
+    }
+
+    /** Fill moves[ply] with the candidate moves and their ordering scores; returns the count */
+    private int generate(int side, int ply, int tableMove) {
+        if (engine.moveCount() == 0 && cellCount > NEAR_ONLY_CELLS) {
+            // Empty large board: start in the centre
+            moves[ply][0] = (rows / 2) * cols + cols / 2;
+            return 1;
+        }
+        int count = generate(side, ply, tableMove, cellCount > NEAR_ONLY_CELLS);
+        return (count > 0) ? count : generate(side, ply, tableMove, false);
+    }
+
+    private int generate(int side, int ply, int tableMove, boolean nearOnly) {
+        int[] plyMoves = moves[ply];
+        int[] plyOrder = order[ply];
+        int opponent = GameEngine.opponent(side);
+        int count = 0;
+        for (int cell = 0; cell < cellCount; ++cell) {
+            if (!engine.isEmpty(cell) || nearOnly && !nearStone(engine, cell)) {
+                continue;
+            }
+            int score;
+            if (cell == tableMove) {
+                score = Integer.MAX_VALUE;
+            } else if (engine.wouldWin(side, cell)) {
+                score = 1 << 30;
+            } else if (engine.wouldWin(opponent, cell)) {
+                score = 1 << 29;
+            } else {
+                int row = cell / cols;
+                int col = cell % cols;
+                score = history[side][cell] * 64
+                        - Math.abs(2 * row - (rows - 1)) - Math.abs(2 * col - (cols - 1)) + jitter[cell];
+            }
+            plyMoves[count] = cell;
+            plyOrder[count] = score;
+            ++count;
+        }
+        return count;
+    }
+
+    /** Selection sort step: move the best remaining candidate to index i and return it */
+    private int selectNext(int ply, int i, int count) {
+        int[] plyMoves = moves[ply];
+        int[] plyOrder = order[ply];
+        int best = i;
+        for (int j = i + 1; j < count; ++j) {
+            if (plyOrder[j] > plyOrder[best]) best = j;
+        }
+        int cell = plyMoves[best];
+        plyMoves[best] = plyMoves[i];
+        plyOrder[best] = plyOrder[i];
+        plyMoves[i] = cell;
+        return cell;
+    }
+
+    /** Returns true if a stone lies within NEAR_DISTANCE rows and columns of the cell */
+    static boolean nearStone(GameEngine engine, int cell) {
+        int rows = engine.rows(), cols = engine.cols();
+        int row = cell / cols;
+        int col = cell % cols;
+        for (int r = Math.max(0, row - NEAR_DISTANCE); r <= Math.min(rows - 1, row + NEAR_DISTANCE); ++r) {
+            for (int c = Math.max(0, col - NEAR_DISTANCE); c <= Math.min(cols - 1, col + NEAR_DISTANCE); ++c) {
+                if (!engine.isEmpty(r * cols + c)) return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Static evaluation for the side to move: every k-in-a-row window holding
+     * stones of only one side counts 4^(stones), for that side.
+     */
+    private int evaluate(int side) {
+        int score = 0;
+        for (int w = 0; w < windowStart.length; ++w) {
+            int crosses = 0;
+            int noughts = 0;
+            for (int i = 0, cell = windowStart[w]; i < winLength; ++i, cell += windowStep[w]) {
+                int content = engine.get(cell);
+                if (content == GameEngine.CROSS) ++crosses;
+                else if (content == GameEngine.NOUGHT) ++noughts;
+            }
+            if (noughts == 0 && crosses > 0) score += 1 << Math.min(2 * crosses, 16);
+            else if (crosses == 0 && noughts > 0) score -= 1 << Math.min(2 * noughts, 16);
+        }
+        score = Math.max(-WIN_THRESHOLD / 2, Math.min(WIN_THRESHOLD / 2, score));
+        return (side == GameEngine.CROSS) ? score : -score;
+    }
+
+    /** (Re)allocate the buffers if the board size changed */
+    private void prepare(GameEngine engine) {
+        if (engine.rows() == rows && engine.cols() == cols && engine.winLength() == winLength) {
+            for (int[] sideHistory : history) {
+                for (int cell = 0; cell < cellCount; ++cell) sideHistory[cell] >>= 1; // age
+            }
+            return;
+        }
+        rows = engine.rows();
+        cols = engine.cols();
+        winLength = engine.winLength();
+        cellCount = rows * cols;
+        moves = new int[cellCount + 1][cellCount];
+        order = new int[cellCount + 1][cellCount];
+        history = new int[2][cellCount];
+        jitter = new int[cellCount];
+        if (helper > 0) {
+            SplittableRandom random = new SplittableRandom(helper);
+            for (int cell = 0; cell < cellCount; ++cell) jitter[cell] = random.nextInt(4);
+        }
+        if (clearsTable) {
+            table.clear();
+        }
+
+        Windows windows = new Windows(rows, cols, winLength);
+        windowStart = windows.start;
+        windowStep = windows.step;
+    }
+}
@@ -0,0 +1,158 @@
+package Chapter5.engine;
+
+/**
+ * The BitBoard class is the game engine behind the Board view.
+ * Each side's stones are kept in one int mask (bit number = row * COLS + col),
+ * wins are detected with precomputed line masks, and a move counter
+ * detects a DRAW without rescanning the board.
+ */
+public class BitBoard implements GameEngine {
+    // Define named constants
+    public static final int ROWS = 3;  // ROWS x COLS cells
+    public static final int COLS = 3;
+    public static final int CELLS = ROWS * COLS;
+    public static final int FULL = (1 << CELLS) - 1;  // mask with every cell set
+
+    /** The 8 winning lines: 3 rows, 3 columns and the 2 diagonals */
+    static final int[] LINES = {
+            0b000_000_111, 0b000_111_000, 0b111_000_000,  // rows
+            0b001_001_001, 0b010_010_010, 0b100_100_100,  // columns
+            0b100_010_001, 0b001_010_100                  // diagonal, opposite-diagonal
+    };
+    /** For each cell, the winning lines passing through it */
+    static final int[][] LINES_THROUGH = new int[CELLS][];
+
+    static {
+        for (int cell = 0; cell < CELLS; ++cell) {
+            int count = 0;
+            for (int line : LINES) {
+                if ((line & (1 << cell)) != 0) ++count;
+            }
+            LINES_THROUGH[cell] = new int[count];
+            count = 0;
+            for (int line : LINES) {
+                if ((line & (1 << cell)) != 0) LINES_THROUGH[cell][count++] = line;
+            }
+        }
+    }
+
+    // Define properties (package-visible)
+    /** Stones of CROSS (stones[0]) and NOUGHT (stones[1]), one bit per cell */
+    final int[] stones = new int[2];
+    /** Number of stones on the board */
+    int moveCount;
+    /** Zobrist key of the position */
+    long key;
+
+    @Override
+    public int rows() {
+        return ROWS;
+    }
+
+    @Override
+    public int cols() {
+        return COLS;
+    }
+
+    @Override
+    public int winLength() {
+        return 3;
+    }
+
+    @Override
+    public int cellCount() {
+        return CELLS;
+    }
+
+    @Override
+    public void reset() {
+        stones[CROSS] = 0;
+        stones[NOUGHT] = 0;
+        moveCount = 0;
+        key = 0;
+    }
+
+    @Override
+    public int get(int cell) {
+        int bit = 1 << cell;
+        if ((stones[CROSS] & bit) != 0) return CROSS;
+        if ((stones[NOUGHT] & bit) != 0) return NOUGHT;
+        return EMPTY;
+    }
+
+    @Override
+    public boolean isEmpty(int cell) {
+        return ((stones[CROSS] | stones[NOUGHT]) & (1 << cell)) == 0;
+    }
+
+    /** Returns the mask of empty cells */
+    public int emptyMask() {
+        return ~(stones[CROSS] | stones[NOUGHT]) & FULL;
+    }
+
+    /** Returns the stones of the given side */
+    public int stones(int side) {
+        return stones[side];
+    }
+
+    @Override
+    public int moveCount() {
+        return moveCount;
+    }
+
+    @Override
+    public long key() {
+        return key;
+    }
+
+    @Override
+    public State play(int side, int cell) {
+        place(side, cell);
+        if (hasWon(side, cell)) {
+            return (side == CROSS) ? State.CROSS_WON : State.NOUGHT_WON;
+        }
+        return (moveCount == CELLS) ? State.DRAW : State.PLAYING;
+    }
+
+    /** Place a stone without computing the game state (e.g. for a trial move) */
+    public void place(int side, int cell) {
+        stones[side] |= 1 << cell;
+        ++moveCount;
+        key ^= Zobrist.of(side, cell);
+    }
+
+    /** Take back a stone placed by play() or place() */
+    @Override
+    public void remove(int side, int cell) {
+        stones[side] &= ~(1 << cell);
+        --moveCount;
+        key ^= Zobrist.of(side, cell);
+    }
+
+    @Override
+    public boolean hasWon(int side, int cell) {
+        int mine = stones[side];
+        for (int line : LINES_THROUGH[cell]) {
+            if ((mine & line) == line) return true;
+        }
+        return false;
+    }
+
+    /** Check if the given side has a complete line anywhere */
+    public boolean hasWon(int side) {
+        int mine = stones[side];
+        for (int line : LINES) {
+            if ((mine & line) == line) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean wouldWin(int side, int cell) {
+        int mine = stones[side] | (1 << cell);
+        for (int line : LINES_THROUGH[cell]) {
+            if ((mine & line) == line) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,305 @@
+package Chapter5.engine;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiConsumer;
+import java.util.stream.Collector;
+
+/**
+ * Streaming reader for a GameRecordLog file. The archive is split into chunks
+ * of whole blocks which a fork-join pipeline scans in parallel: each chunk is
+ * memory-mapped read-only, its records are fed one by one to a Collector
+ * through a single reused Record view (no allocation per game), and the
+ * per-chunk results are combined. At most one chunk per worker is mapped at a
+ * time, so memory stays flat however large the archive is.
+ *
+ * Usage: java Chapter5.engine.GameArchive file
+ * prints the Stats report (results per GameMode, win rates by opening move).
+ */
+public class GameArchive implements Closeable {
+    /** Blocks per chunk (4 MiB) */
+    private static final int CHUNK_BLOCKS = 64;
+    private static final GameMode[] MODES = GameMode.values();
+    private static final State[] STATES = State.values();
+
+    /** A view of the current record; valid only inside Collector.accumulator(), do not keep it */
+    public static final class Record {
+        private ByteBuffer buffer;
+        private int offset;
+
+        public GameMode mode() {
+            return MODES[buffer.get(offset + 1)];
+        }
+
+        public State result() {
+            return STATES[buffer.get(offset + 2)];
+        }
+
+        public int rows() {
+            return buffer.get(offset + 3) & 0xFF;
+        }
+
+        public int cols() {
+            return buffer.get(offset + 4) & 0xFF;
+        }
+
+        public int winLength() {
+            return buffer.get(offset + 5) & 0xFF;
+        }
+
+        public int moveCount() {
+            return buffer.get(offset + 6) & 0xFF;
+        }
+
+        /** Returns the cell of the i-th move (X plays the even moves) */
+        public int move(int i) {
+            return buffer.get(offset + GameRecordLog.RECORD_HEADER_SIZE + crossNameLength()
+                    + noughtNameLength() + i) & 0xFF;
+        }
+
+        /** The X player's name (allocates; decode names only when needed) */
+        public String crossName() {
+            return name(offset + GameRecordLog.RECORD_HEADER_SIZE, crossNameLength());
+        }
+
+        /** The O player's name (allocates; decode names only when needed) */
+        public String noughtName() {
+            return name(offset + GameRecordLog.RECORD_HEADER_SIZE + crossNameLength(), noughtNameLength());
+        }
+
+        private int crossNameLength() {
+            return buffer.get(offset + 7) & 0xFF;
+        }
+
+        private int noughtNameLength() {
+            return buffer.get(offset + 8) & 0xFF;
+        }
+
+        private String name(int start, int length) {
+            byte[] bytes = new byte[length];
+            buffer.get(start, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    private final FileChannel channel;
+    private final long size;
+
+    private GameArchive(FileChannel channel) throws IOException {
+        this.channel = channel;
+        size = channel.size();
+        if (size > 0) {
+            ByteBuffer header = ByteBuffer.allocate(GameRecordLog.HEADER_SIZE);
+            channel.read(header, 0);
+            if (header.position() < GameRecordLog.HEADER_SIZE || header.getInt(0) != GameRecordLog.MAGIC) {
+                throw new IOException("Not a game record log");
+            }
+        }
+    }
+
+    /** Open an archive written by GameRecordLog (read-only) */
+    public static GameArchive open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new GameArchive(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /** Returns the number of blocks in the archive */
+    public long blocks() {
+        return (size + GameRecordLog.BLOCK_SIZE - 1) / GameRecordLog.BLOCK_SIZE;
+    }
+
+    /** Feed every record of the archive to the collector, chunks in parallel on the common fork-join pool */
+    public <A, R> R collect(Collector<Record, A, R> collector) {
+        A result = new ChunkTask<>(collector, 0, blocks()).invoke();
+        return collector.finisher().apply(result);
+    }
+
+    /** Scans a range of blocks, splitting it in halves down to CHUNK_BLOCKS */
+    private class ChunkTask<A> extends RecursiveTask<A> {
+        private static final long serialVersionUID = 1L;
+        private final transient Collector<Record, A, ?> collector;
+        private final long firstBlock, endBlock;
+
+        ChunkTask(Collector<Record, A, ?> collector, long firstBlock, long endBlock) {
+            this.collector = collector;
+            this.firstBlock = firstBlock;
+            this.endBlock = endBlock;
+        }
+
+        @Override
+        protected A compute() {
+            if (endBlock - firstBlock > CHUNK_BLOCKS) {
+                long middle = (firstBlock + endBlock) >>> 1;
+                ChunkTask<A> left = new ChunkTask<>(collector, firstBlock, middle);
+                left.fork();
+                A right = new ChunkTask<>(collector, middle, endBlock).compute();
+                return collector.combiner().apply(left.join(), right);
+            }
+            A container = collector.supplier().get();
+            try {
+                scan(container);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return container;
+        }
+
+        private void scan(A container) throws IOException {
+            long start = firstBlock * GameRecordLog.BLOCK_SIZE;
+            long end = Math.min(size, endBlock * GameRecordLog.BLOCK_SIZE);
+            if (start >= end) {
+                return;
+            }
+            MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            Record record = new Record();
+            record.buffer = chunk;
+            BiConsumer<A, Record> accumulator = collector.accumulator();
+            int limit = chunk.limit();
+            for (int blockStart = 0; blockStart < limit; blockStart += GameRecordLog.BLOCK_SIZE) {
+                int offset = (start + blockStart == 0) ? GameRecordLog.HEADER_SIZE : blockStart;
+                int blockEnd = Math.min(limit, blockStart + GameRecordLog.BLOCK_SIZE);
+                while (offset < blockEnd && chunk.get(offset) == GameRecordLog.MARKER) {
+                    record.offset = offset;
+                    accumulator.accept(container, record);
+                    offset += GameRecordLog.recordSize(chunk, offset);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Archive analytics: results and average length for each GameMode (with the
+     * first-mover advantage, X wins minus O wins), and results by opening move
+     * for each board size.
+     */
+    public static class Stats {
+        /** Games by [GameMode ordinal][result State ordinal] */
+        public final long[][] results = new long[MODES.length][STATES.length];
+        /** Total moves by GameMode ordinal */
+        public final long[] moves = new long[MODES.length];
+        /** Games by board size ("rows x cols k") then [opening cell][result State ordinal] */
+        public final Map<String, long[][]> openings = new HashMap<>();
+        // The last board size seen, so a run of same-size games does not touch the map
+        private int lastSize = -1;
+        private long[][] lastOpenings;
+
+        /** The collector that builds the Stats of an archive */
+        public static Collector<Record, Stats, Stats> collector() {
+            return Collector.of(Stats::new, Stats::add, Stats::merge, Collector.Characteristics.UNORDERED);
+        }
+
+        void add(Record record) {
+            int mode = record.mode().ordinal();
+            int result = record.result().ordinal();
+            ++results[mode][result];
+            moves[mode] += record.moveCount();
+            if (record.moveCount() > 0) {
+                int boardSize = record.rows() << 16 | record.cols() << 8 | record.winLength();
+                if (boardSize != lastSize) {
+                    lastSize = boardSize;
+                    lastOpenings = openings.computeIfAbsent(record.rows() + "x" + record.cols() + " k=" + record.winLength(),
+                            key -> new long[record.rows() * record.cols()][STATES.length]);
+                }
+                ++lastOpenings[record.move(0)][result];
+            }
+        }
+
+        Stats merge(Stats other) {
+            for (int mode = 0; mode < MODES.length; ++mode) {
+                for (int result = 0; result < STATES.length; ++result) {
+                    results[mode][result] += other.results[mode][result];
+                }
+                moves[mode] += other.moves[mode];
+            }
+            other.openings.forEach((size, counts) -> {
+                long[][] mine = openings.putIfAbsent(size, counts);
+                if (mine != null) {
+                    for (int cell = 0; cell < counts.length; ++cell) {
+                        for (int result = 0; result < STATES.length; ++result) {
+                            mine[cell][result] += counts[cell][result];
+                        }
+                    }
+                }
+            });
+            lastSize = -1;
+            return this;
+        }
+
+        public long games(GameMode mode) {
+            long games = 0;
+            for (long count : results[mode.ordinal()]) games += count;
+            return games;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder report = new StringBuilder();
+            for (GameMode mode : MODES) {
+                long[] counts = results[mode.ordinal()];
+                long games = games(mode);
+                if (games == 0) continue;
+                report.append(String.format("%s: %d games, avg %.2f moves, X won %.2f%%, O won %.2f%%, draw %.2f%%,"
+                                + " first-mover advantage %+.2f%%%n", mode, games, (double) moves[mode.ordinal()] / games,
+                        percent(counts[State.CROSS_WON.ordinal()], games), percent(counts[State.NOUGHT_WON.ordinal()], games),
+                        percent(counts[State.DRAW.ordinal()], games),
+                        percent(counts[State.CROSS_WON.ordinal()] - counts[State.NOUGHT_WON.ordinal()], games)));
+            }
+            new TreeMap<>(openings).forEach((size, counts) -> {
+                report.append(String.format("Opening move, %s: cell games X%% O%% draw%%%n", size));
+                for (int cell = 0; cell < counts.length; ++cell) {
+                    long games = 0;
+                    for (long count : counts[cell]) games += count;
+                    if (games == 0) continue;
+                    report.append(String.format("  %3d %10d %6.2f %6.2f %6.2f%n", cell, games,
+                            percent(counts[cell][State.CROSS_WON.ordinal()], games),
+                            percent(counts[cell][State.NOUGHT_WON.ordinal()], games),
+                            percent(counts[cell][State.DRAW.ordinal()], games)));
+                }
+            });
+            return report.toString();
+        }
+
+        private static double percent(long count, long games) {
+            return 100.0 * count / games;
+        }
+    }
+
+    /** The entry "main" method */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: java Chapter5.engine.GameArchive file");
+            System.exit(1);
+        }
+        try (GameArchive archive = GameArchive.open(Path.of(args[0]))) {
+            long start = System.nanoTime();
+            Stats stats = archive.collect(Stats.collector());
+            long elapsed = System.nanoTime() - start;
+            System.out.print(stats);
+            long games = 0;
+            for (GameMode mode : MODES) games += stats.games(mode);
+            System.out.printf("Scanned %d games in %d ms (%d games/s)%n", games, elapsed / 1_000_000,
+                    games * 1_000_000_000L / Math.max(1, elapsed));
+        }
+    }
+}
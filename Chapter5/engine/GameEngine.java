@@ -0,0 +1,95 @@
+package Chapter5.engine;
+
+/**
+ * The GameEngine interface is the rules-and-position model behind the Board view.
+ * Cells are numbered row * cols() + col; sides are CROSS (0) and NOUGHT (1).
+ *
+ * BitBoard implements it for the classic 3x3 game, MnkBoard for any
+ * rows-by-cols board where winLength stones in a row win.
+ */
+public interface GameEngine {
+    int CROSS = 0;
+    int NOUGHT = 1;
+    int EMPTY = -1;
+
+    int rows();
+    int cols();
+    /** Number of stones in a row needed to win (the "k" of an m,n,k-game) */
+    int winLength();
+
+    /** Returns the number of cells on the board */
+    default int cellCount() {
+        return rows() * cols();
+    }
+
+    /** Returns the cell number of (row, col) */
+    default int cellOf(int row, int col) {
+        return row * cols() + col;
+    }
+
+    /** Reset the board, ready for new game */
+    void reset();
+
+    /** Returns CROSS, NOUGHT or EMPTY for the given cell */
+    int get(int cell);
+
+    /** Returns true if the given cell has no stone */
+    boolean isEmpty(int cell);
+
+    /** Returns the number of stones on the board */
+    int moveCount();
+
+    /**
+     * Returns the Zobrist key of the position, kept up to date by XOR on every
+     * play() and remove(). Always equal to Zobrist.hash(this).
+     */
+    long key();
+
+    /**
+     * The given side places a stone on the (empty) cell.
+     * Compute and return the new game state (PLAYING, DRAW, CROSS_WON, NOUGHT_WON).
+     */
+    State play(int side, int cell);
+
+    /** Take back a stone placed by play() */
+    void remove(int side, int cell);
+
+    /** Check if the given side has winLength() in a row through the cell */
+    boolean hasWon(int side, int cell);
+
+    /** Check if placing a stone of the given side on the cell would win */
+    boolean wouldWin(int side, int cell);
+
+    /** Returns a new engine with the same board size and stones, e.g. for searching on another thread */
+    default GameEngine copy() {
+        return copyInto(null);
+    }
+
+    /**
+     * Copies the stones into the engine given, if it has the same board size (else into a
+     * new one), and returns it: a search thread can then reuse its engine from move to move.
+     */
+    default GameEngine copyInto(GameEngine to) {
+        if (to == null || to.rows() != rows() || to.cols() != cols() || to.winLength() != winLength()) {
+            to = create(rows(), cols(), winLength());
+        }
+        to.reset();
+        for (int cell = 0; cell < cellCount(); ++cell) {
+            if (!isEmpty(cell)) to.play(get(cell), cell);
+        }
+        return to;
+    }
+
+    /** Creates the engine for a rows-by-cols board: BitBoard for the classic 3x3 game, else MnkBoard */
+    static GameEngine create(int rows, int cols, int winLength) {
+        if (rows == BitBoard.ROWS && cols == BitBoard.COLS && winLength == 3) {
+            return new BitBoard();
+        }
+        return new MnkBoard(rows, cols, winLength);
+    }
+
+    /** Returns the other side */
+    static int opponent(int side) {
+        return side ^ 1;
+    }
+}
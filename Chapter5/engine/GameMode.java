@@ -0,0 +1,10 @@
+package Chapter5.engine;
+
+/**
+ * The GameMode enum describes the different game modes available.
+ */
+public enum GameMode {
+    PLAYER_VS_PLAYER,
+    PLAYER_VS_COMPUTER,
+    COMPUTER_VS_COMPUTER // strategies playing each other, as in the Simulator
+}
\ No newline at end of file
@@ -0,0 +1,186 @@
+package Chapter5.engine;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Append-only binary log of finished games, written through memory-mapped
+ * segments of the file, so recording a game is a few byte stores into memory.
+ * The mapped pages are forced to disk in batches (every FLUSH_RECORDS games,
+ * and on flush() and close()), not per game.
+ *
+ * File format: a sequence of BLOCK_SIZE blocks. Block 0 starts with the
+ * 8-byte file header (magic "TTTR", version). A record never straddles two
+ * blocks; a zero byte where the next record would start ends the block, so
+ * every block can be read on its own. The file grows a mapped segment at a
+ * time, so it ends in zero padding: readers skip it like the end of a block.
+ *
+ * Record layout (one byte each, then the variable parts):
+ *   MARKER, GameMode ordinal, State ordinal (result), rows, cols, winLength,
+ *   moveCount, name1 length, name2 length, name1 (UTF-8), name2 (UTF-8),
+ *   moves (one byte per move: the cell number).
+ * Names are the X player then the O player; boards of up to MAX_CELLS cells.
+ */
+public class GameRecordLog implements Closeable {
+    public static final int MAGIC = 0x54545452; // "TTTR"
+    public static final byte VERSION = 1;
+    public static final int HEADER_SIZE = 8;
+    public static final int BLOCK_SIZE = 1 << 16;
+    public static final byte MARKER = (byte) 0xA5;
+    public static final int RECORD_HEADER_SIZE = 9;
+    public static final int MAX_NAME = 255;
+    /** Largest board: the move count and every cell number fit in a byte */
+    public static final int MAX_CELLS = 255;
+    /** Largest possible record, so it always fits in an empty block */
+    public static final int MAX_RECORD = RECORD_HEADER_SIZE + 2 * MAX_NAME + MAX_CELLS;
+    /** Bytes mapped at a time */
+    private static final int SEGMENT_SIZE = 64 * BLOCK_SIZE;
+    /** Games between forcing the mapped pages to disk */
+    private static final int FLUSH_RECORDS = 1024;
+
+    private final FileChannel channel;
+    private MappedByteBuffer segment;
+    private long segmentStart;
+    /** Logical end of the log: where the next record goes */
+    private long position;
+    private int unflushed;
+
+    private GameRecordLog(FileChannel channel, long position) throws IOException {
+        this.channel = channel;
+        this.position = position;
+        map(position - position % SEGMENT_SIZE);
+    }
+
+    /** Open the log file for appending, creating it if needed */
+    public static GameRecordLog open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long end = findEnd(channel);
+            GameRecordLog log = new GameRecordLog(channel, Math.max(end, HEADER_SIZE));
+            if (end == 0) {
+                log.segment.putInt(0, MAGIC);
+                log.segment.put(4, VERSION);
+            }
+            return log;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /** Returns the logical end of an existing log (0 if empty); skips zero padding left by a crash */
+    private static long findEnd(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size == 0) {
+            return 0;
+        }
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, HEADER_SIZE));
+        if (size < HEADER_SIZE || header.getInt(0) != MAGIC) {
+            throw new IOException("Not a game record log");
+        }
+        for (long block = (size - 1) / BLOCK_SIZE; block >= 0; --block) {
+            long start = block * BLOCK_SIZE;
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                    Math.min(BLOCK_SIZE, size - start));
+            int offset = (block == 0) ? HEADER_SIZE : 0;
+            if (offset < buffer.limit() && buffer.get(offset) == MARKER) {
+                while (offset < buffer.limit() && buffer.get(offset) == MARKER) {
+                    offset += recordSize(buffer, offset);
+                }
+                return start + offset;
+            }
+            if (block == 0) {
+                return HEADER_SIZE;
+            }
+        }
+        return HEADER_SIZE;
+    }
+
+    /** Returns the size of the record starting at offset */
+    static int recordSize(ByteBuffer buffer, int offset) {
+        return RECORD_HEADER_SIZE + (buffer.get(offset + 6) & 0xFF)
+                + (buffer.get(offset + 7) & 0xFF) + (buffer.get(offset + 8) & 0xFF);
+    }
+
+    /** Returns the name as UTF-8 bytes, cut to MAX_NAME bytes; encode names once per game, not per record */
+    public static byte[] encodeName(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        return (bytes.length <= MAX_NAME) ? bytes : Arrays.copyOf(bytes, MAX_NAME);
+    }
+
+    /**
+     * Append one finished game. moves[0 .. moveCount) are the cells played, X first.
+     * Thread-safe; does not allocate.
+     */
+    public synchronized void append(GameMode mode, State result, int rows, int cols, int winLength,
+                                    byte[] crossName, byte[] noughtName, byte[] moves, int moveCount)
+            throws IOException {
+        if (rows * cols > MAX_CELLS || crossName.length > MAX_NAME || noughtName.length > MAX_NAME) {
+            throw new IllegalArgumentException("Record too large");
+        }
+        int size = RECORD_HEADER_SIZE + crossName.length + noughtName.length + moveCount;
+        long blockEnd = position - position % BLOCK_SIZE + BLOCK_SIZE;
+        if (position + size > blockEnd) {
+            position = blockEnd; // the rest of the block stays zero: end of block
+        }
+        if (position + size > segmentStart + SEGMENT_SIZE) {
+            map(position - position % SEGMENT_SIZE);
+        }
+
+        MappedByteBuffer out = segment;
+        int offset = (int) (position - segmentStart);
+        out.put(offset, MARKER);
+        out.put(offset + 1, (byte) mode.ordinal());
+        out.put(offset + 2, (byte) result.ordinal());
+        out.put(offset + 3, (byte) rows);
+        out.put(offset + 4, (byte) cols);
+        out.put(offset + 5, (byte) winLength);
+        out.put(offset + 6, (byte) moveCount);
+        out.put(offset + 7, (byte) crossName.length);
+        out.put(offset + 8, (byte) noughtName.length);
+        offset += RECORD_HEADER_SIZE;
+        for (byte b : crossName) out.put(offset++, b);
+        for (byte b : noughtName) out.put(offset++, b);
+        for (int i = 0; i < moveCount; ++i) out.put(offset++, moves[i]);
+        position += size;
+
+        if (++unflushed >= FLUSH_RECORDS) {
+            flush();
+        }
+    }
+
+    /** Force the records appended so far to disk */
+    public synchronized void flush() {
+        segment.force();
+        unflushed = 0;
+    }
+
+    /**
+     * Flush and close. The zero padding after the logical end stays: the file
+     * cannot be truncated while mapped (Windows refuses), and the mapping is
+     * only released when the buffer is collected.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        flush();
+        segment = null;
+        channel.close();
+    }
+
+    /** Map the segment starting at the given offset (growing the file as needed) */
+    private void map(long start) throws IOException {
+        if (segment != null) {
+            segment.force();
+        }
+        segmentStart = start;
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, start, SEGMENT_SIZE);
+    }
+}
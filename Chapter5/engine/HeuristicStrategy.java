@@ -0,0 +1,63 @@
+package Chapter5.engine;
+
+import java.util.SplittableRandom;
+
+/**
+ * The original one-ply computer player: win if possible, else block the
+ * opponent's win, else take the center, else a random corner, else any
+ * random empty cell.
+ */
+public class HeuristicStrategy implements Strategy {
+    private final SplittableRandom random;
+
+    public HeuristicStrategy(SplittableRandom random) {
+        this.random = random;
+    }
+
+    @Override
+    public int chooseMove(GameEngine engine, int side) {
+        int lastRow = engine.rows() - 1;
+        int lastCol = engine.cols() - 1;
+
+        // Try to win or block opponent
+        for (int i = 0; i < 2; i++) { // i=0 for the side to move, i=1 for opponent
+            int checkSide = (i == 0) ? side : GameEngine.opponent(side);
+            for (int cell = 0; cell < engine.cellCount(); cell++) {
+                if (engine.isEmpty(cell) && engine.wouldWin(checkSide, cell)) {
+                    return cell;
+                }
+            }
+        }
+
+        // If no winning/blocking move, try to take the center
+        int bestCell = engine.cellOf(lastRow / 2, lastCol / 2);
+        if (!engine.isEmpty(bestCell)) {
+            // If center is taken, try a corner
+            int corners = 0; // bit i set if corner i is available
+            for (int i = 0; i < 4; i++) {
+                if (engine.isEmpty(cornerCell(engine, i, lastRow, lastCol))) corners |= 1 << i;
+            }
+            int corner = randomBit(corners);
+            bestCell = (corner != -1) ? cornerCell(engine, corner, lastRow, lastCol)
+                    : RandomStrategy.randomEmptyCell(engine, random);
+        }
+        return bestCell;
+    }
+
+    /** Returns the cell of corner i (0: top-left, 1: top-right, 2: bottom-left, 3: bottom-right) */
+    private static int cornerCell(GameEngine engine, int i, int lastRow, int lastCol) {
+        return engine.cellOf((i < 2) ? 0 : lastRow, (i % 2 == 0) ? 0 : lastCol);
+    }
+
+    /** Picks a random set bit of the mask, or -1 if the mask is empty */
+    private int randomBit(int mask) {
+        int count = Integer.bitCount(mask);
+        if (count == 0) {
+            return -1;
+        }
+        for (int skip = random.nextInt(count); skip > 0; --skip) {
+            mask &= mask - 1; // drop the lowest bit
+        }
+        return Integer.numberOfTrailingZeros(mask);
+    }
+}
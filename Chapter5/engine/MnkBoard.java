@@ -0,0 +1,151 @@
+package Chapter5.engine;
+
+import java.util.Arrays;
+
+/**
+ * The MnkBoard class is the game engine for an m,n,k-game: a rows-by-cols
+ * board where the first side to get winLength stones in a row, column or
+ * diagonal wins (e.g. 7x7 with k=5, or 15x15 gomoku).
+ *
+ * Win detection scans the 4 directions through the last move only, so it
+ * costs O(k) per move whatever the board size. A move counter detects a DRAW.
+ */
+public class MnkBoard implements GameEngine {
+    /** Direction steps (row, col): horizontal, vertical, diagonal, opposite-diagonal */
+    private static final int[] DIR_ROW = {0, 1, 1, 1};
+    private static final int[] DIR_COL = {1, 0, 1, -1};
+
+    private final int rows;
+    private final int cols;
+    private final int winLength;
+
+    // Define properties (package-visible)
+    /** Content of each cell: 0 if empty, else side + 1 */
+    final byte[] cells;
+    /** Number of stones on the board */
+    int moveCount;
+    /** Zobrist key of the position */
+    long key;
+
+    /** Constructor to initialize an empty rows-by-cols board, winLength in a row to win */
+    public MnkBoard(int rows, int cols, int winLength) {
+        if (rows < 1 || cols < 1 || winLength < 1 || winLength > Math.max(rows, cols)) {
+            throw new IllegalArgumentException("Invalid board " + rows + "x" + cols + " k=" + winLength);
+        }
+        if ((long) rows * cols > Zobrist.MAX_CELLS) {
+            throw new IllegalArgumentException("Board " + rows + "x" + cols + " has more than "
+                    + Zobrist.MAX_CELLS + " cells");
+        }
+        this.rows = rows;
+        this.cols = cols;
+        this.winLength = winLength;
+        cells = new byte[rows * cols];
+    }
+
+    @Override
+    public int rows() {
+        return rows;
+    }
+
+    @Override
+    public int cols() {
+        return cols;
+    }
+
+    @Override
+    public int winLength() {
+        return winLength;
+    }
+
+    @Override
+    public int cellCount() {
+        return cells.length;
+    }
+
+    @Override
+    public void reset() {
+        Arrays.fill(cells, (byte) 0);
+        moveCount = 0;
+        key = 0;
+    }
+
+    @Override
+    public int get(int cell) {
+        return cells[cell] - 1;
+    }
+
+    @Override
+    public boolean isEmpty(int cell) {
+        return cells[cell] == 0;
+    }
+
+    @Override
+    public int moveCount() {
+        return moveCount;
+    }
+
+    @Override
+    public long key() {
+        return key;
+    }
+
+    @Override
+    public State play(int side, int cell) {
+        cells[cell] = (byte) (side + 1);
+        ++moveCount;
+        key ^= Zobrist.of(side, cell);
+        if (hasWon(side, cell)) {
+            return (side == CROSS) ? State.CROSS_WON : State.NOUGHT_WON;
+        }
+        return (moveCount == cells.length) ? State.DRAW : State.PLAYING;
+    }
+
+    @Override
+    public void remove(int side, int cell) {
+        cells[cell] = 0;
+        --moveCount;
+        key ^= Zobrist.of(side, cell);
+    }
+
+    @Override
+    public boolean hasWon(int side, int cell) {
+        return longestRun(side, cell) >= winLength;
+    }
+
+    @Override
+    public boolean wouldWin(int side, int cell) {
+        return longestRun(side, cell) >= winLength;
+    }
+
+    /**
+     * Returns the longest run of the side's stones through the cell, counting
+     * the cell itself as the side's stone. Each direction stops after winLength
+     * stones, so this is O(k).
+     */
+    private int longestRun(int side, int cell) {
+        byte mine = (byte) (side + 1);
+        int row = cell / cols;
+        int col = cell % cols;
+        int longest = 0;
+        for (int dir = 0; dir < 4; ++dir) {
+            int run = 1 + count(mine, row, col, DIR_ROW[dir], DIR_COL[dir])
+                    + count(mine, row, col, -DIR_ROW[dir], -DIR_COL[dir]);
+            if (run > longest) longest = run;
+        }
+        return longest;
+    }
+
+    /** Counts the side's stones from (row, col), exclusive, stepping (dRow, dCol) */
+    private int count(byte mine, int row, int col, int dRow, int dCol) {
+        int n = 0;
+        int r = row + dRow;
+        int c = col + dCol;
+        while (n < winLength - 1 && r >= 0 && r < rows && c >= 0 && c < cols
+                && cells[r * cols + c] == mine) {
+            ++n;
+            r += dRow;
+            c += dCol;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,348 @@
+package Chapter5.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Monte Carlo Tree Search (UCT) for boards too large for a deep alpha-beta
+ * search. Worker threads of a ForkJoinPool grow one shared tree until the
+ * wall-clock budget runs out: each walks down by UCT, expands a leaf and
+ * finishes the game with a random playout, then backs the result up.
+ *
+ * The tree lives in primitive arrays indexed by node number (a node's children
+ * are one contiguous block), with atomic visit and score counters, so there
+ * is no object per node and threads never lock. A node's visit is counted on
+ * the way down, before its playout result is known (a virtual loss), which
+ * steers concurrent threads into different branches.
+ *
+ * Playouts and tree walks do not allocate: each worker plays on its own copy
+ * of the engine and takes the moves back afterwards.
+ */
+public class MonteCarloSearch {
+    /** UCT exploration constant (rewards are in [0, 1]) */
+    private static final double EXPLORATION = 1.4;
+    /** A leaf is expanded once it has been visited this often */
+    private static final int EXPAND_VISITS = 4;
+
+    // Expansion states of a node
+    private static final int LEAF = 0;
+    private static final int EXPANDING = 1;
+    private static final int EXPANDED = 2;
+
+    /** The outcome of a search */
+    public static class Result {
+        /** Most visited cell, or -1 if there is no legal move */
+        public final int move;
+        /** Share of playouts through the move won by the side to move (draws count half) */
+        public final double winRate;
+        public final long playouts;
+        /** Tree size */
+        public final int nodes;
+        public final long elapsedNanos;
+
+        Result(int move, double winRate, long playouts, int nodes, long elapsedNanos) {
+            this.move = move;
+            this.winRate = winRate;
+            this.playouts = playouts;
+            this.nodes = nodes;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /** Search throughput */
+        public long playoutsPerSecond() {
+            return playouts * 1_000_000_000L / Math.max(1, elapsedNanos);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("move %d win rate %.3f, %d playouts in %d ms (%d playouts/s), %d nodes",
+                    move, winRate, playouts, elapsedNanos / 1_000_000, playoutsPerSecond(), nodes);
+        }
+    }
+
+    private final ForkJoinPool pool;
+    private final Worker[] workers;
+    private final int capacity;
+
+    // The tree: node 0 is the root; moves[n] is the cell played to reach node n
+    private final int[] moves;
+    private final int[] firstChild;
+    private final int[] childCount;
+    private final AtomicIntegerArray visits;
+    private final AtomicIntegerArray scores; // 2 per win, 1 per draw, for the side that played the node's move
+    private final AtomicIntegerArray expansion;
+    private final AtomicInteger size = new AtomicInteger();
+
+    // Search state, valid during search()
+    private int rootSide;
+    private long deadline;
+    private AtomicBoolean stop;
+    /** Set to stop the workers early (the caller was interrupted, or a worker failed) */
+    private final AtomicBoolean workersStop = new AtomicBoolean();
+
+    /** Constructor for the given number of threads and a tree of up to 2^20 nodes */
+    public MonteCarloSearch(int threads) {
+        this(threads, 1 << 20);
+    }
+
+    public MonteCarloSearch(int threads, int capacity) {
+        this.capacity = capacity;
+        moves = new int[capacity];
+        firstChild = new int[capacity];
+        childCount = new int[capacity];
+        visits = new AtomicIntegerArray(capacity);
+        scores = new AtomicIntegerArray(capacity);
+        expansion = new AtomicIntegerArray(capacity);
+        pool = new ForkJoinPool(threads);
+        workers = new Worker[threads];
+        SplittableRandom random = new SplittableRandom();
+        for (int i = 0; i < threads; ++i) {
+            workers[i] = new Worker(random.split());
+        }
+    }
+
+    /** Search the best move for the side to move within the time budget */
+    public Result search(GameEngine engine, int side, long timeBudgetMillis) {
+        return search(engine, side, timeBudgetMillis, null);
+    }
+
+    /** Same as search(engine, side, timeBudgetMillis), and also stops as soon as the stop flag (if not null) is set */
+    public synchronized Result search(GameEngine engine, int side, long timeBudgetMillis, AtomicBoolean stop) {
+        long start = System.nanoTime();
+        rootSide = side;
+        deadline = start + timeBudgetMillis * 1_000_000L;
+        this.stop = stop;
+        clearTree();
+        if (engine.moveCount() < engine.cellCount()) {
+            expand(0, engine);
+        }
+
+        long playouts = 0;
+        if (childCount[0] > 1) {
+            workersStop.set(false);
+            List<Future<Long>> results = new ArrayList<>(workers.length);
+            for (Worker worker : workers) {
+                worker.prepare(engine);
+                results.add(pool.submit((Callable<Long>) worker));
+            }
+            // Wait for every worker, even if interrupted: until it returns it may still write to the tree
+            boolean interrupted = false;
+            Throwable failure = null;
+            for (Future<Long> result : results) {
+                while (true) {
+                    try {
+                        playouts += result.get();
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                        workersStop.set(true); // the workers return after their current iteration
+                    } catch (ExecutionException e) {
+                        if (failure == null) failure = e.getCause();
+                        workersStop.set(true);
+                        break;
+                    } catch (CancellationException e) {
+                        break; // shutdown() dropped it before it ran
+                    }
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt(); // for the caller to see
+            }
+            if (failure != null) {
+                this.stop = null;
+                throw new IllegalStateException("Monte Carlo search failed", failure);
+            }
+        }
+
+        int best = -1;
+        for (int child = firstChild[0]; child < firstChild[0] + childCount[0]; ++child) {
+            if (best == -1 || visits.get(child) > visits.get(best)) best = child;
+        }
+        this.stop = null;
+        return (best == -1) ? new Result(-1, 0, playouts, size.get(), System.nanoTime() - start)
+                : new Result(moves[best], scores.get(best) / (2.0 * Math.max(1, visits.get(best))),
+                        playouts, size.get(), System.nanoTime() - start);
+    }
+
+    /** Stop the worker threads; the search must not be used afterwards */
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    private void clearTree() {
+        for (int node = 0, used = Math.min(size.get(), capacity); node < used; ++node) {
+            visits.lazySet(node, 0);
+            scores.lazySet(node, 0);
+            expansion.lazySet(node, LEAF);
+            childCount[node] = 0;
+        }
+        size.set(1); // the root
+    }
+
+    /** Add the children of the node (for the position on the engine); only one thread expands a node */
+    private void expand(int node, GameEngine engine) {
+        if (!expansion.compareAndSet(node, LEAF, EXPANDING)) {
+            return;
+        }
+        int cellCount = engine.cellCount();
+        // Large boards only expand cells near existing stones, as AlphaBetaSearch only searches them
+        boolean nearOnly = cellCount > AlphaBetaSearch.NEAR_ONLY_CELLS && engine.moveCount() > 0;
+        int count = countChildren(engine, nearOnly);
+        if (count == 0) {
+            nearOnly = false;
+            count = countChildren(engine, false);
+        }
+        int start = size.getAndAdd(count);
+        if (start + count > capacity) {
+            return; // tree full: the node stays a leaf (EXPANDING) for good
+        }
+        int child = start;
+        for (int cell = 0; cell < cellCount; ++cell) {
+            if (engine.isEmpty(cell) && (!nearOnly || AlphaBetaSearch.nearStone(engine, cell))) {
+                moves[child++] = cell;
+            }
+        }
+        firstChild[node] = start;
+        childCount[node] = count;
+        expansion.set(node, EXPANDED); // publishes the children to other threads
+    }
+
+    private static int countChildren(GameEngine engine, boolean nearOnly) {
+        int count = 0;
+        for (int cell = 0; cell < engine.cellCount(); ++cell) {
+            if (engine.isEmpty(cell) && (!nearOnly || AlphaBetaSearch.nearStone(engine, cell))) ++count;
+        }
+        return count;
+    }
+
+    /** The UCT child of an expanded node: unvisited children first */
+    private int select(int node) {
+        double logVisits = Math.log(Math.max(1, visits.get(node)));
+        int best = -1;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        for (int child = firstChild[node], end = child + childCount[node]; child < end; ++child) {
+            int childVisits = visits.get(child);
+            if (childVisits == 0) {
+                return child;
+            }
+            double value = scores.get(child) / (2.0 * childVisits)
+                    + EXPLORATION * Math.sqrt(logVisits / childVisits);
+            if (value > bestValue) {
+                bestValue = value;
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    /** One search thread: its own engine, random generator and scratch buffers */
+    private class Worker implements Callable<Long> {
+        private final SplittableRandom random;
+        private GameEngine engine;
+        private int[] path;    // nodes visited this iteration
+        private int[] played;  // cells played this iteration, tree moves then playout moves
+        private int[] empties; // empty cells during the playout
+
+        Worker(SplittableRandom random) {
+            this.random = random;
+        }
+
+        /** Copy the root position, reusing the engine and buffers if the board size is the same */
+        void prepare(GameEngine from) {
+            engine = from.copyInto(engine);
+            if (played == null || played.length != from.cellCount()) {
+                path = new int[from.cellCount() + 1];
+                played = new int[from.cellCount()];
+                empties = new int[from.cellCount()];
+            }
+        }
+
+        @Override
+        public Long call() {
+            long playouts = 0;
+            while (System.nanoTime() < deadline && !workersStop.get() && (stop == null || !stop.get())) {
+                iterate();
+                ++playouts;
+            }
+            return playouts;
+        }
+
+        /** Select, expand, play out and back up once */
+        private void iterate() {
+            int node = 0;
+            int depth = 0;
+            int count = 0;
+            int side = rootSide;
+            State state = State.PLAYING;
+            visits.incrementAndGet(0);
+            path[depth++] = 0;
+            while (state == State.PLAYING && expansion.get(node) == EXPANDED) {
+                node = select(node);
+                visits.incrementAndGet(node); // virtual loss until the result is backed up
+                path[depth++] = node;
+                state = engine.play(side, moves[node]);
+                played[count++] = moves[node];
+                side = GameEngine.opponent(side);
+            }
+            if (state == State.PLAYING && visits.get(node) >= EXPAND_VISITS) {
+                expand(node, engine);
+            }
+
+            // Random playout to the end of the game
+            int emptyCount = 0;
+            if (state == State.PLAYING) {
+                for (int cell = 0; cell < engine.cellCount(); ++cell) {
+                    if (engine.isEmpty(cell)) empties[emptyCount++] = cell;
+                }
+            }
+            while (state == State.PLAYING) {
+                int pick = random.nextInt(emptyCount);
+                int cell = empties[pick];
+                empties[pick] = empties[--emptyCount];
+                state = engine.play(side, cell);
+                played[count++] = cell;
+                side = GameEngine.opponent(side);
+            }
+
+            // Back up: each node scores for the side that played its move
+            int winner = (state == State.CROSS_WON) ? GameEngine.CROSS
+                    : (state == State.NOUGHT_WON) ? GameEngine.NOUGHT : GameEngine.EMPTY;
+            for (int i = 0; i < depth; ++i) {
+                int mover = rootSide ^ (i & 1) ^ 1; // the root's "move" was the opponent's
+                int reward = (winner == GameEngine.EMPTY) ? 1 : (winner == mover) ? 2 : 0;
+                if (reward != 0) scores.addAndGet(path[i], reward);
+            }
+
+            // Take the moves back
+            for (int i = count - 1; i >= 0; --i) {
+                engine.remove(rootSide ^ (i & 1), played[i]);
+            }
+        }
+    }
+
+    /** The entry "main" method: playouts/sec and the chosen move from the empty board */
+    public static void main(String[] args) {
+        int threads = (args.length > 0) ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int rows = (args.length > 3) ? Integer.parseInt(args[1]) : 7;
+        int cols = (args.length > 3) ? Integer.parseInt(args[2]) : 7;
+        int winLength = (args.length > 3) ? Integer.parseInt(args[3]) : 5;
+        long budget = (args.length > 4) ? Long.parseLong(args[4]) : 1000;
+
+        MonteCarloSearch search = new MonteCarloSearch(threads);
+        GameEngine engine = GameEngine.create(rows, cols, winLength);
+        engine.play(GameEngine.CROSS, engine.cellOf(rows / 2, cols / 2));
+        search.search(engine, GameEngine.NOUGHT, budget); // warm-up
+        System.out.println(rows + "x" + cols + " k=" + winLength + ", " + threads + " threads: "
+                + search.search(engine, GameEngine.NOUGHT, budget));
+        search.shutdown();
+    }
+}
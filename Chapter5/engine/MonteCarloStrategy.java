@@ -0,0 +1,19 @@
+package Chapter5.engine;
+
+/**
+ * Plays the most visited move of a Monte Carlo tree search within a time budget.
+ */
+public class MonteCarloStrategy implements Strategy {
+    private final MonteCarloSearch search;
+    private final long timeBudgetMillis;
+
+    public MonteCarloStrategy(MonteCarloSearch search, long timeBudgetMillis) {
+        this.search = search;
+        this.timeBudgetMillis = timeBudgetMillis;
+    }
+
+    @Override
+    public int chooseMove(GameEngine engine, int side) {
+        return search.search(engine, side, timeBudgetMillis).move;
+    }
+}
@@ -0,0 +1,224 @@
+package Chapter5.engine;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lazy-SMP parallel search: the calling thread runs the main search while
+ * helper threads search the same root on their own copies of the engine.
+ * All share one lock-free TranspositionTable, so whatever a helper finds
+ * first cuts the others' trees. Helpers differ slightly from the main search
+ * (odd helpers start one ply deeper, each has its own move-order tie-breaks),
+ * so they do not all walk the same tree in lockstep.
+ *
+ * The main search's result is played; the helpers stop as soon as it is done.
+ * With one thread it is a plain AlphaBetaSearch.
+ *
+ * Usage: java Chapter5.engine.ParallelSearch [threads [rows cols k [depth]]]
+ * reports the time-to-depth speed-up of threads over one thread. Both are
+ * warmed up first, then timed in alternating rounds.
+ */
+public class ParallelSearch extends AlphaBetaSearch {
+    private static final int TIMED_ROUNDS = 3; // main(): timed rounds per configuration, after one untimed
+    private static final long DEAD_HELPER_CHECK_NANOS = 10_000_000L;
+    private final Helper[] helpers;
+    /** Set once the main search is done, so the helpers return too; cleared before the next search */
+    private final AtomicBoolean helpersStop = new AtomicBoolean();
+    private volatile boolean shutdown;
+    private int rows, cols, winLength; // board size the table was filled for
+
+    // The search in progress, for the helpers: written before they are started
+    private Thread caller;
+    private int searchSide, searchDepth;
+    private long searchBudgetMillis;
+    private int generation; // number of searches started
+
+    /** Constructor for the given number of threads (including the caller's), sharing a table of 2^20 entries */
+    public ParallelSearch(int threads) {
+        this(new TranspositionTable(20), threads);
+    }
+
+    public ParallelSearch(TranspositionTable table, int threads) {
+        super(table, 0, false);
+        helpers = new Helper[Math.max(0, threads - 1)];
+        for (int i = 0; i < helpers.length; ++i) {
+            helpers[i] = new Helper(new AlphaBetaSearch(table, i + 1, false));
+            helpers[i].thread.start();
+        }
+    }
+
+    /** Number of search threads, including the caller's */
+    public int threads() {
+        return helpers.length + 1;
+    }
+
+    @Override
+    public int bestMove(GameEngine engine, int side, int maxDepth, long timeBudgetMillis, AtomicBoolean stop) {
+        long start = System.nanoTime();
+        if (engine.rows() != rows || engine.cols() != cols || engine.winLength() != winLength) {
+            rows = engine.rows();
+            cols = engine.cols();
+            winLength = engine.winLength();
+            table().clear(); // before any thread searches: keys of another board size mean other positions
+        }
+        if (helpers.length == 0) {
+            return super.bestMove(engine, side, maxDepth, timeBudgetMillis, stop);
+        }
+
+        helpersStop.set(false);
+        caller = Thread.currentThread();
+        searchSide = side;
+        searchDepth = maxDepth;
+        searchBudgetMillis = timeBudgetMillis;
+        ++generation;
+        for (Helper helper : helpers) {
+            helper.engine = engine.copyInto(helper.engine);
+            helper.failure = null;
+            helper.started = generation; // volatile write: publishes the search arguments above
+            LockSupport.unpark(helper.thread);
+        }
+        try {
+            return super.bestMove(engine, side, maxDepth, timeBudgetMillis, stop);
+        } finally {
+            helpersStop.set(true);
+            // Wait for every helper, even if interrupted: until it returns it may still write to the table
+            boolean interrupted = false;
+            Throwable failure = null;
+            for (Helper helper : helpers) {
+                // A helper exits only after shutdown(); the timed park notices one that is gone
+                while (helper.finished != generation && helper.thread.isAlive()) {
+                    LockSupport.parkNanos(this, DEAD_HELPER_CHECK_NANOS);
+                    if (Thread.interrupted()) {
+                        interrupted = true; // the helpers were told to stop: they return at their next clock check
+                    }
+                }
+                if (failure == null) failure = helper.failure;
+                lastNodes += helper.search.lastNodes; // total over all threads
+            }
+            lastElapsedNanos = System.nanoTime() - start;
+            if (interrupted) {
+                Thread.currentThread().interrupt(); // for the caller to see
+            }
+            if (failure != null) {
+                throw new IllegalStateException("Search helper failed", failure);
+            }
+        }
+    }
+
+    /** Stop the helper threads; the search must not be used afterwards */
+    public void shutdown() {
+        shutdown = true;
+        helpersStop.set(true); // a search in progress returns at its next clock check
+        for (Helper helper : helpers) {
+            LockSupport.unpark(helper.thread);
+        }
+    }
+
+    /**
+     * A helper thread and its search. It sleeps until bestMove() moves started
+     * ahead, searches its copy of the position, then moves finished up to match;
+     * handing work over this way allocates nothing per search.
+     */
+    private final class Helper implements Runnable {
+        final AlphaBetaSearch search;
+        final Thread thread;
+        GameEngine engine;
+        Throwable failure;
+        volatile int started, finished; // the generation of the last search started and finished
+
+        Helper(AlphaBetaSearch search) {
+            this.search = search;
+            thread = new Thread(this, "search-helper");
+            thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            int done = 0;
+            while (true) {
+                int next = started;
+                if (next == done) {
+                    if (shutdown) break; // only with nothing pending: bestMove() may be waiting for it
+                    LockSupport.park(this);
+                    continue;
+                }
+                done = next;
+                if (!shutdown) {
+                    try {
+                        search.bestMove(engine, searchSide, searchDepth, searchBudgetMillis, helpersStop);
+                    } catch (RuntimeException | Error e) {
+                        failure = e;
+                    }
+                }
+                finished = done; // volatile write: publishes the node count and failure
+                LockSupport.unpark(caller);
+            }
+        }
+    }
+
+    /** The entry "main" method: time-to-depth on fixed positions, one thread versus threads */
+    public static void main(String[] args) {
+        int threads = (args.length > 0) ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int rows = (args.length > 3) ? Integer.parseInt(args[1]) : 7;
+        int cols = (args.length > 3) ? Integer.parseInt(args[2]) : 7;
+        int winLength = (args.length > 3) ? Integer.parseInt(args[3]) : 5;
+        int depth = (args.length > 4) ? Integer.parseInt(args[4]) : 5;
+
+        GameEngine[] positions = new GameEngine[8];
+        SplittableRandom random = new SplittableRandom(7);
+        for (int i = 0; i < positions.length; ++i) {
+            GameEngine engine = positions[i] = GameEngine.create(rows, cols, winLength);
+            int centre = engine.cellOf(rows / 2, cols / 2);
+            engine.play(GameEngine.CROSS, centre);
+            for (int m = 1; m < 4; ++m) {
+                int cell;
+                do {
+                    cell = engine.cellOf(Math.floorMod(rows / 2 + random.nextInt(5) - 2, rows),
+                            Math.floorMod(cols / 2 + random.nextInt(5) - 2, cols));
+                } while (!engine.isEmpty(cell));
+                engine.play(m & 1, cell);
+            }
+        }
+
+        System.out.println(rows + "x" + cols + " k=" + winLength + ", " + positions.length
+                + " positions to depth " + depth + ", best of " + TIMED_ROUNDS + " rounds");
+        int[] configs = {1, threads};
+        ParallelSearch[] searches = new ParallelSearch[configs.length];
+        for (int c = 0; c < configs.length; ++c) {
+            searches[c] = new ParallelSearch(configs[c]);
+            round(searches[c], positions, depth); // untimed: JIT warmup, helper threads started
+        }
+        // Alternate the configurations, so both see the same JVM state; keep each one's fastest round
+        long[] elapsed = new long[configs.length];
+        long[] nodes = new long[configs.length];
+        Arrays.fill(elapsed, Long.MAX_VALUE);
+        for (int r = 0; r < TIMED_ROUNDS; ++r) {
+            for (int c = 0; c < configs.length; ++c) {
+                long start = System.nanoTime();
+                long roundNodes = round(searches[c], positions, depth);
+                long roundElapsed = System.nanoTime() - start;
+                if (roundElapsed < elapsed[c]) {
+                    elapsed[c] = roundElapsed;
+                    nodes[c] = roundNodes;
+                }
+            }
+        }
+        for (int c = 0; c < configs.length; ++c) {
+            System.out.printf("%2d threads: %6d ms, %10d nodes/s, speed-up %.2fx%n", configs[c],
+                    elapsed[c] / 1_000_000, nodes[c] * 1_000_000_000L / elapsed[c], (double) elapsed[0] / elapsed[c]);
+            searches[c].shutdown();
+        }
+    }
+
+    /** Search every position to the depth from an empty table; returns the nodes searched */
+    private static long round(ParallelSearch search, GameEngine[] positions, int depth) {
+        long nodes = 0;
+        for (GameEngine position : positions) {
+            search.table().clear();
+            nodes += search.search(position, position.moveCount() & 1, depth, 3_600_000).nodes;
+        }
+        return nodes;
+    }
+}
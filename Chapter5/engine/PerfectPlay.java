@@ -0,0 +1,122 @@
+package Chapter5.engine;
+
+/**
+ * Perfect play for the classic 3x3 game, answered by a single table lookup.
+ *
+ * At class initialisation every position reachable from the empty board
+ * (CROSS moving first) is solved once by exhaustive negamax. Positions equal
+ * up to the 8 rotations/reflections of the board share one entry, keyed by
+ * the canonical form (the transform giving the smallest key). Each entry
+ * packs key, best move and outcome into one int of a 1024-slot open-addressing
+ * table (4 KB in all).
+ */
+public final class PerfectPlay {
+    // Outcomes for the side to move
+    public static final int LOSS = 0;
+    public static final int DRAW = 1;
+    public static final int WIN = 2;
+
+    /** Rotations and reflections of the 3x3 board */
+    static final Symmetry SYMMETRY = new Symmetry(BitBoard.ROWS, BitBoard.COLS);
+
+    // Entry layout: key (18 bits) << 8 | outcome (2 bits) << 4 | move (4 bits); 0 = free slot
+    private static final int SLOTS = 1024;
+    private static final int[] TABLE = new int[SLOTS];
+    private static int entries;
+
+    static {
+        solve(new BitBoard(), GameEngine.CROSS, new byte[1 << (2 * BitBoard.CELLS)]);
+    }
+
+    private PerfectPlay() {
+    }
+
+    /** Returns a best move for the side to move, or -1 if the game is over */
+    public static int bestMove(BitBoard board) {
+        int found = lookup(board);
+        return (found == -1) ? -1 : SYMMETRY.unmap(found >> 8, found & 0xF);
+    }
+
+    /** Returns the outcome (WIN, DRAW, LOSS) for the side to move, or -1 if the game is over */
+    public static int outcome(BitBoard board) {
+        int found = lookup(board);
+        return (found == -1) ? -1 : (found >> 4) & 0x3;
+    }
+
+    /** Number of canonical positions stored */
+    public static int size() {
+        return entries;
+    }
+
+    /** Returns transform << 8 | outcome << 4 | canonical move, or -1 if not in the table */
+    private static int lookup(BitBoard board) {
+        int crosses = board.stones(GameEngine.CROSS);
+        int noughts = board.stones(GameEngine.NOUGHT);
+        int transform = SYMMETRY.canonicalTransform(crosses, noughts);
+        int best = key(transform, crosses, noughts);
+        for (int slot = hash(best); ; slot = (slot + 1) & (SLOTS - 1)) {
+            int entry = TABLE[slot];
+            if (entry == 0) return -1;
+            if (entry >>> 8 == best) return transform << 8 | (entry & 0xFF);
+        }
+    }
+
+    /** Key of the position under transform t: CROSS mask << 9 | NOUGHT mask */
+    private static int key(int t, int crosses, int noughts) {
+        return SYMMETRY.mapMask(t, crosses) << BitBoard.CELLS | SYMMETRY.mapMask(t, noughts);
+    }
+
+    private static int hash(int key) {
+        return (key * 0x9E3779B1) >>> 22; // top 10 bits
+    }
+
+    /**
+     * Negamax over the whole game tree; returns the score for the side to move:
+     * n + 1 for a win with n empty cells left, 0 for a draw, negative for a loss.
+     * memo holds score + 16 (0 = not solved yet), indexed by CROSS mask << 9 | NOUGHT mask.
+     */
+    private static int solve(BitBoard board, int side, byte[] memo) {
+        int position = board.stones(GameEngine.CROSS) << BitBoard.CELLS | board.stones(GameEngine.NOUGHT);
+        if (memo[position] != 0) {
+            return memo[position] - 16;
+        }
+        int best = Integer.MIN_VALUE;
+        int bestMove = -1;
+        for (int empty = board.emptyMask(); empty != 0; empty &= empty - 1) {
+            int cell = Integer.numberOfTrailingZeros(empty);
+            State state = board.play(side, cell);
+            int score;
+            if (state == State.PLAYING) {
+                score = -solve(board, GameEngine.opponent(side), memo);
+            } else if (state == State.DRAW) {
+                score = 0;
+            } else {
+                score = BitBoard.CELLS - board.moveCount() + 1;
+            }
+            board.remove(side, cell);
+            if (score > best) {
+                best = score;
+                bestMove = cell;
+            }
+        }
+        memo[position] = (byte) (best + 16);
+        store(board, bestMove, (best > 0) ? WIN : (best == 0) ? DRAW : LOSS);
+        return best;
+    }
+
+    /** Store the entry if the position is its own canonical form */
+    private static void store(BitBoard board, int move, int outcome) {
+        int crosses = board.stones(GameEngine.CROSS);
+        int noughts = board.stones(GameEngine.NOUGHT);
+        if (SYMMETRY.canonicalTransform(crosses, noughts) != Symmetry.IDENTITY) {
+            return;
+        }
+        int key = key(Symmetry.IDENTITY, crosses, noughts);
+        int slot = hash(key);
+        while (TABLE[slot] != 0) {
+            slot = (slot + 1) & (SLOTS - 1);
+        }
+        TABLE[slot] = key << 8 | outcome << 4 | move;
+        ++entries;
+    }
+}
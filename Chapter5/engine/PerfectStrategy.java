@@ -0,0 +1,21 @@
+package Chapter5.engine;
+
+/**
+ * Perfect play on the classic 3x3 board from the PerfectPlay table;
+ * other boards fall back to an alpha-beta search.
+ */
+public class PerfectStrategy implements Strategy {
+    private final Strategy fallback;
+
+    public PerfectStrategy(Strategy fallback) {
+        this.fallback = fallback;
+    }
+
+    @Override
+    public int chooseMove(GameEngine engine, int side) {
+        if (engine instanceof BitBoard) {
+            return PerfectPlay.bestMove((BitBoard) engine);
+        }
+        return fallback.chooseMove(engine, side);
+    }
+}
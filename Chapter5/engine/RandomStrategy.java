@@ -0,0 +1,32 @@
+package Chapter5.engine;
+
+import java.util.SplittableRandom;
+
+/**
+ * Plays a uniformly random empty cell.
+ */
+public class RandomStrategy implements Strategy {
+    private final SplittableRandom random;
+
+    public RandomStrategy(SplittableRandom random) {
+        this.random = random;
+    }
+
+    @Override
+    public int chooseMove(GameEngine engine, int side) {
+        return randomEmptyCell(engine, random);
+    }
+
+    /** Picks a random empty cell, or -1 if the board is full */
+    public static int randomEmptyCell(GameEngine engine, SplittableRandom random) {
+        int count = engine.cellCount() - engine.moveCount();
+        if (count == 0) {
+            return -1;
+        }
+        int skip = random.nextInt(count);
+        for (int cell = 0; cell < engine.cellCount(); cell++) {
+            if (engine.isEmpty(cell) && skip-- == 0) return cell;
+        }
+        return -1;
+    }
+}
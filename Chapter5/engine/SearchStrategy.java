@@ -0,0 +1,21 @@
+package Chapter5.engine;
+
+/**
+ * Plays the best move found by an alpha-beta search within a depth/time budget.
+ */
+public class SearchStrategy implements Strategy {
+    private final AlphaBetaSearch search;
+    private final int maxDepth;
+    private final long timeBudgetMillis;
+
+    public SearchStrategy(AlphaBetaSearch search, int maxDepth, long timeBudgetMillis) {
+        this.search = search;
+        this.maxDepth = maxDepth;
+        this.timeBudgetMillis = timeBudgetMillis;
+    }
+
+    @Override
+    public int chooseMove(GameEngine engine, int side) {
+        return search.bestMove(engine, side, maxDepth, timeBudgetMillis);
+    }
+}
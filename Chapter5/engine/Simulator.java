@@ -0,0 +1,212 @@
+package Chapter5.engine;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * Headless batch simulator: plays N games between two strategies on all
+ * cores and reports games/sec and the outcome distribution. No Swing, no sound.
+ *
+ * Each worker thread has its own engine, strategies and SplittableRandom
+ * (split from one seed, so a run is repeatable), and counts its results
+ * locally; the counts are merged once the workers are done, so there is no
+ * shared state while playing.
+ *
+ * Usage: java [-Dsimulator.log=file] Chapter5.engine.Simulator games crossStrategy noughtStrategy
+ * [rows cols k [threads [seed]]] with strategies random, heuristic, perfect, search or mcts;
+ * with simulator.log set, every game is appended to that GameRecordLog (as
+ * COMPUTER_VS_COMPUTER; boards over GameRecordLog.MAX_CELLS cells are not logged).
+ */
+public class Simulator {
+    /** Results of a batch of games */
+    public static class Stats {
+        public long games, crossWins, noughtWins, draws, moves;
+        public long elapsedNanos;
+
+        void add(Stats other) {
+            games += other.games;
+            crossWins += other.crossWins;
+            noughtWins += other.noughtWins;
+            draws += other.draws;
+            moves += other.moves;
+        }
+
+        public long gamesPerSecond() {
+            return games * 1_000_000_000L / Math.max(1, elapsedNanos);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d games in %d ms (%d games/s), avg %.2f moves%n"
+                            + "  CROSS won  %6.2f%%%n  NOUGHT won %6.2f%%%n  draw       %6.2f%%",
+                    games, elapsedNanos / 1_000_000, gamesPerSecond(), (double) moves / Math.max(1, games),
+                    percent(crossWins), percent(noughtWins), percent(draws));
+        }
+
+        private double percent(long count) {
+            return 100.0 * count / Math.max(1, games);
+        }
+    }
+
+    private final int rows, cols, winLength;
+    private final Function<SplittableRandom, Strategy> crossFactory;
+    private final Function<SplittableRandom, Strategy> noughtFactory;
+    private final int threads;
+    private GameRecordLog recordLog;
+    private byte[] crossName = new byte[0], noughtName = new byte[0];
+
+    /**
+     * Constructor for a rows-by-cols board, winLength in a row to win. The factories
+     * create one strategy per worker thread, given that worker's random generator.
+     */
+    public Simulator(int rows, int cols, int winLength, Function<SplittableRandom, Strategy> crossFactory,
+                     Function<SplittableRandom, Strategy> noughtFactory, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Threads must be at least 1");
+        }
+        GameEngine.create(rows, cols, winLength); // rejects invalid and oversize boards up front
+        this.rows = rows;
+        this.cols = cols;
+        this.winLength = winLength;
+        this.crossFactory = crossFactory;
+        this.noughtFactory = noughtFactory;
+        this.threads = threads;
+    }
+
+    /** Append every game played to the log, under the given player names (boards of up to GameRecordLog.MAX_CELLS cells) */
+    public void setRecordLog(GameRecordLog recordLog, String crossName, String noughtName) {
+        this.recordLog = recordLog;
+        this.crossName = GameRecordLog.encodeName(crossName);
+        this.noughtName = GameRecordLog.encodeName(noughtName);
+    }
+
+    /** Play the given number of games, spread over the worker threads */
+    public Stats run(long games, long seed) throws InterruptedException {
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            SplittableRandom root = new SplittableRandom(seed);
+            List<Future<Stats>> workers = new ArrayList<>();
+            for (int w = 0; w < threads; ++w) {
+                long share = games / threads + ((w < games % threads) ? 1 : 0);
+                SplittableRandom random = root.split();
+                workers.add(pool.submit(() -> play(share, random)));
+            }
+            Stats total = new Stats();
+            for (Future<Stats> worker : workers) {
+                total.add(worker.get());
+            }
+            total.elapsedNanos = System.nanoTime() - start;
+            return total;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Simulation failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** One worker: play the games on its own engine, counting locally */
+    private Stats play(long games, SplittableRandom random) {
+        GameEngine engine = GameEngine.create(rows, cols, winLength);
+        Strategy cross = crossFactory.apply(random.split());
+        Strategy nought = noughtFactory.apply(random.split());
+        Stats stats = new Stats();
+        byte[] moves = new byte[engine.cellCount()];
+        boolean logging = recordLog != null && engine.cellCount() <= GameRecordLog.MAX_CELLS;
+        for (long game = 0; game < games; ++game) {
+            engine.reset();
+            int side = GameEngine.CROSS; // 'X' plays first
+            State state = State.PLAYING;
+            while (state == State.PLAYING) {
+                int cell = ((side == GameEngine.CROSS) ? cross : nought).chooseMove(engine, side);
+                moves[engine.moveCount()] = (byte) cell;
+                state = engine.play(side, cell);
+                side = GameEngine.opponent(side);
+            }
+            if (logging) {
+                try {
+                    recordLog.append(GameMode.COMPUTER_VS_COMPUTER, state, rows, cols, winLength,
+                            crossName, noughtName, moves, engine.moveCount());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            switch (state) {
+                case CROSS_WON:  ++stats.crossWins;  break;
+                case NOUGHT_WON: ++stats.noughtWins; break;
+                default:         ++stats.draws;      break;
+            }
+            stats.moves += engine.moveCount();
+        }
+        stats.games = games;
+        return stats;
+    }
+
+    /** Returns the factory for a strategy name: random, heuristic, perfect, search or mcts */
+    public static Function<SplittableRandom, Strategy> strategy(String name) {
+        switch (name) {
+            case "random":    return RandomStrategy::new;
+            case "heuristic": return HeuristicStrategy::new;
+            case "perfect":   return random -> new PerfectStrategy(newSearchStrategy());
+            case "search":    return random -> newSearchStrategy();
+            case "mcts":      return random -> new MonteCarloStrategy(new MonteCarloSearch(1, 1 << 16), 50);
+            default: throw new IllegalArgumentException("Unknown strategy " + name
+                    + " (use random, heuristic, perfect, search or mcts)");
+        }
+    }
+
+    private static Strategy newSearchStrategy() {
+        return new SearchStrategy(new AlphaBetaSearch(new TranspositionTable(18)), 64, 50);
+    }
+
+    /** The entry "main" method */
+    public static void main(String[] args) throws InterruptedException, IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: java [-Dsimulator.log=file] Chapter5.engine.Simulator games"
+                    + " crossStrategy noughtStrategy [rows cols k [threads [seed]]]");
+            System.err.println("Strategies: random, heuristic, perfect, search, mcts");
+            System.exit(1);
+        }
+        long games = Long.parseLong(args[0]);
+        int rows = (args.length > 5) ? Integer.parseInt(args[3]) : BitBoard.ROWS;
+        int cols = (args.length > 5) ? Integer.parseInt(args[4]) : BitBoard.COLS;
+        int winLength = (args.length > 5) ? Integer.parseInt(args[5]) : 3;
+        int threads = (args.length > 6) ? Integer.parseInt(args[6]) : Runtime.getRuntime().availableProcessors();
+        long seed = (args.length > 7) ? Long.parseLong(args[7]) : System.nanoTime();
+
+        Simulator simulator;
+        try {
+            simulator = new Simulator(rows, cols, winLength, strategy(args[1]), strategy(args[2]), threads);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+            return;
+        }
+        System.out.println(args[1] + " (X) vs " + args[2] + " (O) on " + rows + "x" + cols + " k=" + winLength
+                + ", " + threads + " threads, seed " + seed);
+        String logFile = System.getProperty("simulator.log");
+        if (logFile == null) {
+            System.out.println(simulator.run(games, seed));
+            return;
+        }
+        if (rows * cols > GameRecordLog.MAX_CELLS) {
+            System.err.println("Not logging: the game record log holds boards of up to "
+                    + GameRecordLog.MAX_CELLS + " cells");
+            System.out.println(simulator.run(games, seed));
+            return;
+        }
+        try (GameRecordLog log = GameRecordLog.open(Path.of(logFile))) {
+            simulator.setRecordLog(log, args[1], args[2]);
+            System.out.println(simulator.run(games, seed));
+        }
+    }
+}
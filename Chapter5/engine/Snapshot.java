@@ -0,0 +1,144 @@
+package Chapter5.engine;
+
+import java.util.Arrays;
+
+/**
+ * Immutable game-state snapshots packed into a single long: the stones of
+ * both sides, the side to move and the game State. Playing a move returns a
+ * new long and never changes the old one, so a snapshot can be published to
+ * other threads with one volatile write, and undo/redo is just keeping old values.
+ *
+ * A Snapshot object holds the rules for one board size (boards of up to
+ * MAX_CELLS cells) and encodes/decodes snapshot values; it has no game state of its own.
+ *
+ * Layout: CROSS stones in bits 0-27, NOUGHT stones in bits 28-55 (bit = cell),
+ * side to move in bit 56, State ordinal in bits 57-58.
+ */
+public final class Snapshot {
+    /** Largest board that fits (e.g. 5x5) */
+    public static final int MAX_CELLS = 28;
+    private static final int NOUGHT_SHIFT = 28;
+    private static final int SIDE_SHIFT = 56;
+    private static final int STATE_SHIFT = 57;
+    private static final long CELL_MASK = (1L << MAX_CELLS) - 1;
+    private static final State[] STATES = State.values();
+
+    private final int rows, cols, winLength, cellCount;
+    /** For each cell, the masks of the winLength-in-a-row windows through it */
+    private final int[][] linesThrough;
+
+    /** Constructor for the rules of a rows-by-cols board, winLength in a row to win */
+    public Snapshot(int rows, int cols, int winLength) {
+        if (!fits(rows, cols)) {
+            throw new IllegalArgumentException("Board " + rows + "x" + cols + " has more than " + MAX_CELLS + " cells");
+        }
+        this.rows = rows;
+        this.cols = cols;
+        this.winLength = winLength;
+        cellCount = rows * cols;
+
+        Windows windows = new Windows(rows, cols, winLength);
+        int[] counts = new int[cellCount];
+        int[][] lines = new int[cellCount][windows.count()];
+        for (int w = 0; w < windows.count(); ++w) {
+            int line = windows.mask(w);
+            for (int member = 0; member < cellCount; ++member) {
+                if ((line & (1 << member)) != 0) lines[member][counts[member]++] = line;
+            }
+        }
+        linesThrough = new int[cellCount][];
+        for (int cell = 0; cell < cellCount; ++cell) {
+            linesThrough[cell] = Arrays.copyOf(lines[cell], counts[cell]);
+        }
+    }
+
+    /** Returns true if a rows-by-cols board fits in a snapshot */
+    public static boolean fits(int rows, int cols) {
+        return rows * cols <= MAX_CELLS;
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    public int cols() {
+        return cols;
+    }
+
+    public int winLength() {
+        return winLength;
+    }
+
+    /** The empty board, CROSS to move */
+    public long empty() {
+        return 0L;
+    }
+
+    /** Returns the snapshot after the side to move plays the (empty) cell */
+    public long play(long snapshot, int cell) {
+        int side = sideToMove(snapshot);
+        long next = snapshot | 1L << (cell + ((side == GameEngine.CROSS) ? 0 : NOUGHT_SHIFT));
+        State state = State.PLAYING;
+        int mine = stones(next, side);
+        for (int line : linesThrough[cell]) {
+            if ((mine & line) == line) {
+                state = (side == GameEngine.CROSS) ? State.CROSS_WON : State.NOUGHT_WON;
+                break;
+            }
+        }
+        if (state == State.PLAYING && moveCount(next) == cellCount) {
+            state = State.DRAW;
+        }
+        return with(next, GameEngine.opponent(side), state);
+    }
+
+    /** Captures the engine's position; the side to move and state are given by the caller */
+    public long of(GameEngine engine, int sideToMove, State state) {
+        long snapshot = 0;
+        for (int cell = 0; cell < cellCount; ++cell) {
+            int side = engine.get(cell);
+            if (side != GameEngine.EMPTY) {
+                snapshot |= 1L << (cell + ((side == GameEngine.CROSS) ? 0 : NOUGHT_SHIFT));
+            }
+        }
+        return with(snapshot, sideToMove, state);
+    }
+
+    /** Sets the engine (of the same board size) to the snapshot's position */
+    public void restore(long snapshot, GameEngine engine) {
+        engine.reset();
+        for (int cell = 0; cell < cellCount; ++cell) {
+            int side = get(snapshot, cell);
+            if (side != GameEngine.EMPTY) engine.play(side, cell);
+        }
+    }
+
+    private static long with(long snapshot, int sideToMove, State state) {
+        return (snapshot & (CELL_MASK | CELL_MASK << NOUGHT_SHIFT))
+                | (long) sideToMove << SIDE_SHIFT | (long) state.ordinal() << STATE_SHIFT;
+    }
+
+    /** Returns the stones of the side, one bit per cell */
+    public static int stones(long snapshot, int side) {
+        return (int) ((snapshot >>> ((side == GameEngine.CROSS) ? 0 : NOUGHT_SHIFT)) & CELL_MASK);
+    }
+
+    /** Returns CROSS, NOUGHT or EMPTY for the given cell */
+    public static int get(long snapshot, int cell) {
+        if ((snapshot & 1L << cell) != 0) return GameEngine.CROSS;
+        if ((snapshot & 1L << (cell + NOUGHT_SHIFT)) != 0) return GameEngine.NOUGHT;
+        return GameEngine.EMPTY;
+    }
+
+    public static int sideToMove(long snapshot) {
+        return (int) (snapshot >>> SIDE_SHIFT) & 1;
+    }
+
+    public static State state(long snapshot) {
+        return STATES[(int) (snapshot >>> STATE_SHIFT) & 0x3];
+    }
+
+    public static int moveCount(long snapshot) {
+        return Long.bitCount(snapshot & (CELL_MASK | CELL_MASK << NOUGHT_SHIFT));
+    }
+}
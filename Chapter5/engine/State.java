@@ -1,4 +1,4 @@
-package Chapter5;
+package Chapter5.engine;
 
 /**
  * The enum State defines the various game states of the TTT game
@@ -0,0 +1,14 @@
+package Chapter5.engine;
+
+/**
+ * A Strategy chooses moves for a computer player. Strategies can keep state
+ * (buffers, a random generator, a search engine), so each thread plays with
+ * its own instance.
+ */
+public interface Strategy {
+    /**
+     * Returns the cell to play for the side to move, or -1 if there is no legal move.
+     * The engine must be left as it was given.
+     */
+    int chooseMove(GameEngine engine, int side);
+}
@@ -0,0 +1,179 @@
+package Chapter5.engine;
+
+/**
+ * Maps positions to a canonical form under the rotations and reflections of
+ * the board, so that caches, opening books and tables need to keep only one
+ * of up to 8 equivalent positions.
+ *
+ * Transform t rotates the board 90 degrees clockwise (t % 4) times, then
+ * mirrors it left-right if t >= 4. A square board has all 8 transforms; other
+ * boards only the 4 that keep their shape (0, 2, 4 and 6).
+ * canonicalTransform() returns the transform used, so a move found on the
+ * canonical position maps back with unmap(t, move).
+ *
+ * Cells are mapped with precomputed permutation tables. For boards of up to
+ * 32 cells, whole stone masks are mapped one byte at a time with lookup tables.
+ */
+public final class Symmetry {
+    public static final int COUNT = 8;
+    public static final int IDENTITY = 0;
+
+    private final int rows;
+    private final int cols;
+    private final int cellCount;
+    /** map[t][cell]: the cell that transform t moves the cell to */
+    private final int[][] map;
+    /** unmap[t][cell]: the cell that transform t moves onto the given cell */
+    private final int[][] unmap;
+    /** maskBytes[t][i][b]: byte i of a mask with value b, mapped by transform t (boards up to 32 cells) */
+    private final int[][][] maskBytes;
+
+    /** Constructor to build the tables for a rows-by-cols board */
+    public Symmetry(int rows, int cols) {
+        this.rows = rows;
+        this.cols = cols;
+        cellCount = rows * cols;
+        map = new int[COUNT][];
+        unmap = new int[COUNT][];
+        for (int t = 0; t < COUNT; ++t) {
+            if (!isValid(t)) continue;
+            map[t] = new int[cellCount];
+            unmap[t] = new int[cellCount];
+            for (int cell = 0; cell < cellCount; ++cell) {
+                int row = cell / cols;
+                int col = cell % cols;
+                int height = rows;
+                for (int r = 0; r < t % 4; ++r) {  // rotate 90 degrees clockwise
+                    int tmp = row;
+                    row = col;
+                    col = height - 1 - tmp;
+                    height = (height == rows) ? cols : rows;
+                }
+                if (t >= 4) {                      // then mirror left-right
+                    col = cols - 1 - col;
+                }
+                map[t][cell] = row * cols + col;
+                unmap[t][row * cols + col] = cell;
+            }
+        }
+
+        if (cellCount <= 32) {
+            int bytes = (cellCount + 7) / 8;
+            maskBytes = new int[COUNT][bytes][256];
+            for (int t = 0; t < COUNT; ++t) {
+                if (!isValid(t)) continue;
+                for (int i = 0; i < bytes; ++i) {
+                    for (int b = 0; b < 256; ++b) {
+                        int mapped = 0;
+                        for (int bit = 0; bit < 8; ++bit) {
+                            int cell = i * 8 + bit;
+                            if ((b & (1 << bit)) != 0 && cell < cellCount) mapped |= 1 << map[t][cell];
+                        }
+                        maskBytes[t][i][b] = mapped;
+                    }
+                }
+            }
+        } else {
+            maskBytes = null;
+        }
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    public int cols() {
+        return cols;
+    }
+
+    /** Returns true if transform t keeps the board's shape (all 8 do on a square board) */
+    public boolean isValid(int t) {
+        return rows == cols || t % 2 == 0;
+    }
+
+    /** Returns the transform that undoes transform t */
+    public static int inverse(int t) {
+        return (t == 1 || t == 3) ? 4 - t : t; // the two quarter turns swap; the rest undo themselves
+    }
+
+    /** Returns the cell that transform t moves the given cell to */
+    public int map(int t, int cell) {
+        return map[t][cell];
+    }
+
+    /** Returns the cell that transform t moves onto the given cell (maps a canonical move back) */
+    public int unmap(int t, int cell) {
+        return unmap[t][cell];
+    }
+
+    /** Maps a mask of cells (bit number = cell) with transform t; boards of up to 32 cells */
+    public int mapMask(int t, int mask) {
+        int[][] tables = maskBytes[t];
+        int mapped = 0;
+        for (int i = 0; i < tables.length; ++i) {
+            mapped |= tables[i][(mask >>> (8 * i)) & 0xFF];
+        }
+        return mapped;
+    }
+
+    /**
+     * Returns the transform giving the canonical form of the position with the
+     * given CROSS and NOUGHT masks: the one whose (CROSS, NOUGHT) masks are smallest.
+     * Boards of up to 32 cells.
+     */
+    public int canonicalTransform(int crosses, int noughts) {
+        int best = IDENTITY;
+        long bestKey = maskKey(IDENTITY, crosses, noughts);
+        for (int t = 1; t < COUNT; ++t) {
+            if (!isValid(t)) continue;
+            long key = maskKey(t, crosses, noughts);
+            if (key < bestKey) {
+                bestKey = key;
+                best = t;
+            }
+        }
+        return best;
+    }
+
+    /** The (CROSS, NOUGHT) masks under transform t, as one comparable number */
+    public long maskKey(int t, int crosses, int noughts) {
+        return (long) mapMask(t, crosses) << 32 | (mapMask(t, noughts) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Returns the transform giving the canonical form of the engine's position:
+     * the one whose Zobrist key is smallest. Any board size.
+     */
+    public int canonicalTransform(GameEngine engine) {
+        int best = IDENTITY;
+        long bestKey = keyUnder(IDENTITY, engine);
+        for (int t = 1; t < COUNT; ++t) {
+            if (!isValid(t)) continue;
+            long key = keyUnder(t, engine);
+            if (Long.compareUnsigned(key, bestKey) < 0) {
+                bestKey = key;
+                best = t;
+            }
+        }
+        return best;
+    }
+
+    /** Returns the canonical Zobrist key of the engine's position (same for all 8 equivalents) */
+    public long canonicalKey(GameEngine engine) {
+        return keyUnder(canonicalTransform(engine), engine);
+    }
+
+    /** Returns the Zobrist key of the engine's position after transform t */
+    public long keyUnder(int t, GameEngine engine) {
+        if (t == IDENTITY) {
+            return engine.key();
+        }
+        int[] cells = map[t];
+        long key = 0;
+        for (int cell = 0; cell < cellCount; ++cell) {
+            int side = engine.get(cell);
+            if (side != GameEngine.EMPTY) key ^= Zobrist.of(side, cells[cell]);
+        }
+        return key;
+    }
+}
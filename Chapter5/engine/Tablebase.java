@@ -0,0 +1,257 @@
+package Chapter5.engine;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Endgame tablebase: the outcome of every position of a small board (up to
+ * MAX_CELLS cells, e.g. 4x4 k=4), for the side to move, 2 bits per position.
+ *
+ * Generation is retrograde analysis: positions are solved layer by layer
+ * from the full board back to the empty one, each from the already solved
+ * positions one stone later, with every layer spread over all cores. The
+ * result is written to a file which load() memory-maps read-only, so lookups
+ * read the mapped pages directly and the heap stays small.
+ *
+ * Positions are indexed in base 3, one digit per cell (0 empty, 1 CROSS, 2 NOUGHT);
+ * CROSS moves first, so the side to move follows from the stone count.
+ * File layout: HEADER_SIZE bytes (magic "TTTB", rows, cols, winLength),
+ * then 4 positions per byte, lowest bits first.
+ *
+ * Usage: java Chapter5.engine.Tablebase rows cols k file [threads]
+ */
+public class Tablebase implements Closeable {
+    public static final int MAGIC = 0x54545442; // "TTTB"
+    public static final int HEADER_SIZE = 16;
+    /** Largest board: 3^16 positions, 10.8 MB (5x5 would need 3^25, out of reach) */
+    public static final int MAX_CELLS = 16;
+
+    // Stored codes: 0 = not a position of a game in progress (or won by both sides)
+    private static final int UNKNOWN = 0;
+    private static final int LOSS = 1;
+    private static final int DRAW = 2;
+    private static final int WIN = 3;
+
+    private final int rows, cols, winLength, cellCount;
+    private final int[] powers; // 3^cell
+    private final FileChannel channel;
+    private final MappedByteBuffer table;
+
+    private Tablebase(FileChannel channel) throws IOException {
+        this.channel = channel;
+        table = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        if (table.limit() < HEADER_SIZE || table.getInt(0) != MAGIC) {
+            throw new IOException("Not a tablebase");
+        }
+        rows = table.get(4);
+        cols = table.get(5);
+        winLength = table.get(6);
+        cellCount = rows * cols;
+        powers = powers(cellCount);
+        if (table.limit() < HEADER_SIZE + bytes(cellCount)) {
+            throw new IOException("Tablebase truncated");
+        }
+    }
+
+    /** Memory-map a tablebase file written by generate() */
+    public static Tablebase load(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new Tablebase(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /** Returns true if the tablebase is for the engine's board size and rules */
+    public boolean covers(GameEngine engine) {
+        return engine.rows() == rows && engine.cols() == cols && engine.winLength() == winLength;
+    }
+
+    /** Returns the outcome (PerfectPlay.WIN, DRAW, LOSS) for the side to move, or -1 if the game is over */
+    public int outcome(GameEngine engine) {
+        return isOver(engine) ? -1 : code(index(engine)) - 1;
+    }
+
+    /** Returns a best move for the side to move (winning at once when it can), or -1 if the game is over */
+    public int bestMove(GameEngine engine) {
+        int index = index(engine);
+        if (code(index) == UNKNOWN || isOver(engine)) {
+            return -1;
+        }
+        int side = engine.moveCount() & 1;
+        int best = -1;
+        int bestCode = Integer.MAX_VALUE; // the opponent's outcome after our move: lower is better
+        for (int cell = 0; cell < cellCount; ++cell) {
+            if (!engine.isEmpty(cell)) continue;
+            if (engine.wouldWin(side, cell)) return cell;
+            int childCode = code(index + (side + 1) * powers[cell]);
+            if (childCode < bestCode) {
+                bestCode = childCode;
+                best = cell;
+            }
+        }
+        return best;
+    }
+
+    /** Returns true if the game is over: a full board, or a line for the side that moved last */
+    private boolean isOver(GameEngine engine) {
+        if (engine.moveCount() == cellCount) {
+            return true;
+        }
+        int last = GameEngine.opponent(engine.moveCount() & 1);
+        for (int cell = 0; cell < cellCount; ++cell) {
+            if (engine.get(cell) == last && engine.hasWon(last, cell)) return true;
+        }
+        return false;
+    }
+
+    private int index(GameEngine engine) {
+        int index = 0;
+        for (int cell = 0; cell < cellCount; ++cell) {
+            index += (engine.get(cell) + 1) * powers[cell];
+        }
+        return index;
+    }
+
+    private int code(int index) {
+        return (table.get(HEADER_SIZE + (index >>> 2)) >>> ((index & 3) << 1)) & 0x3;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close(); // the mapping stays valid until the buffer is collected
+    }
+
+    private static int[] powers(int cellCount) {
+        int[] powers = new int[cellCount + 1];
+        powers[0] = 1;
+        for (int i = 1; i <= cellCount; ++i) powers[i] = powers[i - 1] * 3;
+        return powers;
+    }
+
+    private static long bytes(int cellCount) {
+        return (powers(cellCount)[cellCount] + 3) / 4;
+    }
+
+    /** Solve the rows-by-cols board (winLength in a row) by retrograde analysis and write the tablebase file */
+    public static void generate(int rows, int cols, int winLength, Path file, int threads)
+            throws IOException, InterruptedException {
+        int cellCount = rows * cols;
+        if (cellCount > MAX_CELLS) {
+            throw new IllegalArgumentException("Board " + rows + "x" + cols + " has more than " + MAX_CELLS + " cells");
+        }
+        int[] powers = powers(cellCount);
+        int full = (1 << cellCount) - 1;
+        // Base-3 index of a set of CROSS stones; a set of NOUGHT stones is twice that
+        int[] ternary = new int[1 << cellCount];
+        for (int mask = 1; mask <= full; ++mask) {
+            int low = Integer.numberOfTrailingZeros(mask);
+            ternary[mask] = ternary[mask & (mask - 1)] + powers[low];
+        }
+        boolean[] hasLine = new boolean[1 << cellCount];
+        Windows windows = new Windows(rows, cols, winLength);
+        for (int w = 0; w < windows.count(); ++w) {
+            int line = windows.mask(w);
+            // Every superset of the line has a line
+            for (int mask = line; mask <= full; mask = (mask + 1) | line) {
+                hasLine[mask] = true;
+            }
+        }
+
+        byte[] codes = new byte[powers[cellCount]];
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            for (int stones = cellCount; stones >= 0; --stones) {
+                int layer = stones;
+                int crossCount = (stones + 1) / 2;
+                int noughtCount = stones / 2;
+                pool.submit(() -> IntStream.rangeClosed(0, full).parallel()
+                        .filter(crosses -> Integer.bitCount(crosses) == crossCount)
+                        .forEach(crosses -> solveLayer(crosses, noughtCount, layer, cellCount, full,
+                                ternary, powers, hasLine, codes))).get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Tablebase generation failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + bytes(cellCount));
+            out.putInt(0, MAGIC);
+            out.put(4, (byte) rows);
+            out.put(5, (byte) cols);
+            out.put(6, (byte) winLength);
+            for (int index = 0; index < codes.length; ++index) {
+                int at = HEADER_SIZE + (index >>> 2);
+                out.put(at, (byte) (out.get(at) | codes[index] << ((index & 3) << 1)));
+            }
+            out.force();
+        }
+    }
+
+    /** Solve every position with the given CROSS stones and noughtCount NOUGHT stones, from the layer above */
+    private static void solveLayer(int crosses, int noughtCount, int stones, int cellCount, int full,
+                                   int[] ternary, int[] powers, boolean[] hasLine, byte[] codes) {
+        int free = full & ~crosses;
+        int side = stones & 1;
+        // Every subset of the free cells with noughtCount stones
+        for (int noughts = free; ; noughts = (noughts - 1) & free) {
+            if (Integer.bitCount(noughts) == noughtCount) {
+                int index = ternary[crosses] + 2 * ternary[noughts];
+                int mine = (side == GameEngine.CROSS) ? crosses : noughts;
+                int theirs = (side == GameEngine.CROSS) ? noughts : crosses;
+                byte code;
+                if (hasLine[mine]) {
+                    code = UNKNOWN; // the game ended before: not a real position
+                } else if (hasLine[theirs]) {
+                    code = LOSS;
+                } else if (stones == cellCount) {
+                    code = DRAW;
+                } else {
+                    code = LOSS;
+                    for (int empty = full & ~(crosses | noughts); empty != 0; empty &= empty - 1) {
+                        int child = codes[index + (side + 1) * powers[Integer.numberOfTrailingZeros(empty)]];
+                        if (child == LOSS) {
+                            code = WIN;
+                            break;
+                        }
+                        if (child == DRAW) code = DRAW;
+                    }
+                }
+                codes[index] = code;
+            }
+            if (noughts == 0) break;
+        }
+    }
+
+    /** The entry "main" method: generate a tablebase file */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 4) {
+            System.err.println("Usage: java Chapter5.engine.Tablebase rows cols k file [threads]");
+            System.exit(1);
+        }
+        int rows = Integer.parseInt(args[0]);
+        int cols = Integer.parseInt(args[1]);
+        int winLength = Integer.parseInt(args[2]);
+        int threads = (args.length > 4) ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+        long start = System.nanoTime();
+        generate(rows, cols, winLength, Path.of(args[3]), threads);
+        try (Tablebase tablebase = load(Path.of(args[3]))) {
+            String[] names = {"LOSS", "DRAW", "WIN"};
+            System.out.println(rows + "x" + cols + " k=" + winLength + " solved in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms on " + threads + " threads: first player "
+                    + names[tablebase.outcome(GameEngine.create(rows, cols, winLength))]);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package Chapter5.engine;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A fixed-size, hash-keyed transposition table for the game-tree search,
+ * held off-heap in a direct ByteBuffer (no boxing, no per-entry objects, no GC
+ * scanning) and shared lock-free by any number of search threads.
+ *
+ * Each entry is two longs: key ^ data, and the packed data (score, depth,
+ * bound type and best move). A probe only accepts an entry whose two words
+ * XOR back to the key, so an entry torn by two threads writing at once reads
+ * as a miss instead of wrong data.
+ *
+ * Entries come in buckets of two: a depth-preferred slot, only replaced by an
+ * entry searched at least as deep (or for the same position), and an
+ * always-replace slot that takes everything else.
+ */
+public class TranspositionTable {
+    // Bound types of a stored score
+    public static final int EXACT = 1;
+    public static final int LOWER = 2;  // score >= stored score (fail-high)
+    public static final int UPPER = 3;  // score <= stored score (fail-low)
+
+    private static final int ENTRY_BYTES = 16;
+    private static final int BUCKET_BYTES = 2 * ENTRY_BYTES;
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    // Probe counters, striped by thread id so search threads rarely contend. Unlike a
+    // LongAdder, which allocates its stripes on first contention, all are allocated up front.
+    private static final int HITS = 0;
+    private static final int MISSES = 1;
+    private static final int COLLISIONS = 2;
+    private static final int STRIPES = 16;
+    private static final int STRIPE_LONGS = 8; // 64 bytes: one cache line per stripe
+    private static final VarHandle COUNTS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final ByteBuffer entries;
+    private final int bucketMask;
+    private final long[] counts = new long[STRIPES * STRIPE_LONGS];
+
+    /** Constructor to allocate a table of 2^bits entries (16 bytes each, off-heap) */
+    public TranspositionTable(int bits) {
+        int buckets = 1 << Math.max(0, bits - 1);
+        entries = ByteBuffer.allocateDirect(buckets * BUCKET_BYTES + 8).alignedSlice(8);
+        bucketMask = buckets - 1;
+    }
+
+    /** Clear all entries and counters */
+    public void clear() {
+        for (int offset = 0; offset < entries.capacity(); offset += 8) {
+            LONGS.setOpaque(entries, offset, 0L);
+        }
+        for (int i = 0; i < counts.length; ++i) {
+            COUNTS.setVolatile(counts, i, 0L);
+        }
+    }
+
+    /** Store an entry for the key */
+    public void store(long key, int score, int depth, int bound, int move) {
+        int bucket = ((int) key & bucketMask) * BUCKET_BYTES;
+        long deepData = (long) LONGS.getOpaque(entries, bucket + 8);
+        long deepKey = (long) LONGS.getOpaque(entries, bucket) ^ deepData;
+        int offset = (deepData == 0 || deepKey == key || depth >= depth(deepData)) ? bucket : bucket + ENTRY_BYTES;
+        long data = pack(score, depth, bound, move);
+        LONGS.setOpaque(entries, offset, key ^ data);
+        LONGS.setOpaque(entries, offset + 8, data);
+    }
+
+    /** Returns the packed entry for the key, or 0 if there is none */
+    public long probe(long key) {
+        int bucket = ((int) key & bucketMask) * BUCKET_BYTES;
+        boolean occupied = false;
+        for (int offset = bucket; offset < bucket + BUCKET_BYTES; offset += ENTRY_BYTES) {
+            long data = (long) LONGS.getOpaque(entries, offset + 8);
+            if (data == 0) continue;
+            if (((long) LONGS.getOpaque(entries, offset) ^ data) == key) {
+                count(HITS);
+                return data;
+            }
+            occupied = true;
+        }
+        count(MISSES);
+        if (occupied) {
+            count(COLLISIONS); // the bucket holds other positions (or a torn entry)
+        }
+        return 0;
+    }
+
+    /** Probes that found the key */
+    public long hits() {
+        return sum(HITS);
+    }
+
+    /** Probes that did not find the key */
+    public long misses() {
+        return sum(MISSES);
+    }
+
+    /** Misses where the bucket was filled by other positions */
+    public long collisions() {
+        return sum(COLLISIONS);
+    }
+
+    private void count(int counter) {
+        int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        COUNTS.getAndAdd(counts, stripe * STRIPE_LONGS + counter, 1L);
+    }
+
+    private long sum(int counter) {
+        long sum = 0;
+        for (int stripe = 0; stripe < STRIPES; ++stripe) {
+            sum += (long) COUNTS.getVolatile(counts, stripe * STRIPE_LONGS + counter);
+        }
+        return sum;
+    }
+
+    @Override
+    public String toString() {
+        long hits = hits(), probes = hits + misses();
+        return String.format("%d probes, %.1f%% hits, %d collisions", probes,
+                100.0 * hits / Math.max(1, probes), collisions());
+    }
+
+    // Packed entry layout: score (32 bits) | depth (8) | bound (2) | move + 1 (16)
+    static long pack(int score, int depth, int bound, int move) {
+        return ((long) score << 32) | ((long) (depth & 0xFF) << 24) | ((long) bound << 16) | (move + 1);
+    }
+
+    public static int score(long entry) {
+        return (int) (entry >> 32);
+    }
+
+    public static int depth(long entry) {
+        return (int) (entry >>> 24) & 0xFF;
+    }
+
+    public static int bound(long entry) {
+        return (int) (entry >>> 16) & 0x3;
+    }
+
+    /** Returns the best move of the entry, or -1 if none */
+    public static int move(long entry) {
+        return (int) (entry & 0xFFFF) - 1;
+    }
+}
@@ -0,0 +1,55 @@
+package Chapter5.engine;
+
+import java.util.Arrays;
+
+/**
+ * The winLength-in-a-row windows of a rows-by-cols board: every run of
+ * winLength cells along a row, a column, a diagonal or an opposite diagonal.
+ * A window is its first cell and the step to the next cell.
+ */
+final class Windows {
+    // Directions: along a row, down a column, down-right, down-left
+    private static final int[] D_ROW = {0, 1, 1, 1};
+    private static final int[] D_COL = {1, 0, 1, -1};
+
+    /** First cell of each window */
+    final int[] start;
+    /** Cell-number step along each window */
+    final int[] step;
+    private final int winLength;
+
+    Windows(int rows, int cols, int winLength) {
+        this.winLength = winLength;
+        int cellCount = rows * cols;
+        int[] starts = new int[cellCount * 4];
+        int[] steps = new int[cellCount * 4];
+        int count = 0;
+        for (int cell = 0; cell < cellCount; ++cell) {
+            for (int dir = 0; dir < 4; ++dir) {
+                int endRow = cell / cols + D_ROW[dir] * (winLength - 1);
+                int endCol = cell % cols + D_COL[dir] * (winLength - 1);
+                if (endRow < rows && endCol >= 0 && endCol < cols) {
+                    starts[count] = cell;
+                    steps[count] = D_ROW[dir] * cols + D_COL[dir];
+                    ++count;
+                }
+            }
+        }
+        start = Arrays.copyOf(starts, count);
+        step = Arrays.copyOf(steps, count);
+    }
+
+    /** Returns the number of windows */
+    int count() {
+        return start.length;
+    }
+
+    /** Returns the cells of window w as a bit mask (bit = cell); boards of up to 32 cells */
+    int mask(int w) {
+        int mask = 0;
+        for (int i = 0, cell = start[w]; i < winLength; ++i, cell += step[w]) {
+            mask |= 1 << cell;
+        }
+        return mask;
+    }
+}
@@ -0,0 +1,43 @@
+package Chapter5.engine;
+
+import java.util.SplittableRandom;
+
+/**
+ * Zobrist keys for hashing positions: one random 64-bit number per (side, cell).
+ * The key of a position is the XOR of the numbers of all its stones, so a move
+ * (or taking it back) updates the key with a single XOR.
+ *
+ * The numbers come from a fixed seed, so keys are the same on every run and
+ * can be stored in files.
+ */
+public final class Zobrist {
+    /** Largest board supported (32x32) */
+    public static final int MAX_CELLS = 1024;
+    private static final long SEED = 0x7A4B_1C3D_5E6F_8091L;
+    private static final long[] KEYS = new long[MAX_CELLS * 2];
+
+    static {
+        SplittableRandom random = new SplittableRandom(SEED);
+        for (int i = 0; i < KEYS.length; ++i) {
+            KEYS[i] = random.nextLong();
+        }
+    }
+
+    private Zobrist() {
+    }
+
+    /** Returns the number to XOR in (or out) for a stone of the side on the cell */
+    public static long of(int side, int cell) {
+        return KEYS[(cell << 1) | side];
+    }
+
+    /** Computes the key of the engine's position from scratch */
+    public static long hash(GameEngine engine) {
+        long key = 0;
+        for (int cell = 0; cell < engine.cellCount(); ++cell) {
+            int side = engine.get(cell);
+            if (side != GameEngine.EMPTY) key ^= of(side, cell);
+        }
+        return key;
+    }
+}
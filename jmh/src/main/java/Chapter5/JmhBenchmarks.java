@@ -0,0 +1,221 @@
+package Chapter5;
+
+import Chapter5.engine.AlphaBetaSearch;
+import Chapter5.engine.BitBoard;
+import Chapter5.engine.GameEngine;
+import Chapter5.engine.HeuristicStrategy;
+import Chapter5.engine.MnkBoard;
+import Chapter5.engine.PerfectStrategy;
+import Chapter5.engine.RandomStrategy;
+import Chapter5.engine.Strategy;
+import Chapter5.engine.TranspositionTable;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the engine and rendering hot paths: Board.stepGame,
+ * Board.hasWon, the computer player's move choice, a fixed-depth search,
+ * full-game playouts and Board.paint into an offscreen image (whole board, and
+ * one cell as repainted after a move). Run with -prof gc for the bytes
+ * allocated per op.
+ *
+ * Benchmarks in the main tree holds the pass/fail allocation and key gates.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class JmhBenchmarks {
+
+    /** A 3x3 board with X in the centre and O in a corner; the ops play (and take back) the other cells */
+    @State(Scope.Thread)
+    public static class BoardState {
+        Board board;
+        int cell;
+
+        @Setup
+        public void setup() {
+            board = new Board();
+            board.stepGame(Seed.CROSS, 1, 1);
+            board.stepGame(Seed.NOUGHT, 0, 0);
+        }
+
+        /** The next cell, skipping the two taken ones */
+        int nextEmptyCell() {
+            do {
+                cell = (cell + 1) % BitBoard.CELLS;
+            } while (cell == 0 || cell == 4);
+            return cell;
+        }
+    }
+
+    @Benchmark
+    public Chapter5.engine.State stepGame(BoardState s) {
+        int next = s.nextEmptyCell();
+        Chapter5.engine.State state = s.board.stepGame(Seed.CROSS, next / BitBoard.COLS, next % BitBoard.COLS);
+        s.board.engine.remove(GameEngine.CROSS, next);
+        return state;
+    }
+
+    @Benchmark
+    public boolean hasWon(BoardState s) {
+        int next = s.nextEmptyCell();
+        return s.board.hasWon(Seed.CROSS, next / BitBoard.COLS, next % BitBoard.COLS);
+    }
+
+    /** Random 3x3 positions with the game still going, for the computer player */
+    @State(Scope.Thread)
+    public static class PositionsState {
+        BitBoard[] positions;
+        AlphaBetaSearch search;
+        int index;
+
+        @Setup
+        public void setup() {
+            positions = Benchmarks.randomPositions(1024, 1);
+            search = new AlphaBetaSearch();
+        }
+    }
+
+    @Benchmark
+    public int computerMove3x3(PositionsState s) {
+        BitBoard position = s.positions[s.index++ & 1023];
+        return GameMain.chooseComputerMove(position, position.moveCount() & 1, s.search);
+    }
+
+    /** A 7x7 k=5 opening, searched to a fixed depth */
+    @State(Scope.Thread)
+    public static class SearchState {
+        MnkBoard board;
+        AlphaBetaSearch search;
+
+        @Setup
+        public void setup() {
+            board = new MnkBoard(7, 7, 5);
+            board.play(GameEngine.CROSS, board.cellOf(3, 3));
+            board.play(GameEngine.NOUGHT, board.cellOf(2, 3));
+            search = new AlphaBetaSearch(new TranspositionTable(16));
+        }
+
+        /** A full search each time, not a table hit; the clear is outside the timed op */
+        @Setup(Level.Invocation)
+        public void clearTable() {
+            search.table().clear();
+        }
+    }
+
+    @Benchmark
+    public int alphaBeta7x7Depth3(SearchState s) {
+        return s.search.bestMove(s.board, GameEngine.CROSS, 3, 3_600_000);
+    }
+
+    /** Boards and players for the playouts */
+    @State(Scope.Thread)
+    public static class PlayoutState {
+        BitBoard board = new BitBoard();
+        MnkBoard board7x7 = new MnkBoard(7, 7, 5);
+        Strategy random, heuristic, perfect;
+
+        @Setup
+        public void setup() {
+            SplittableRandom seed = new SplittableRandom(42);
+            random = new RandomStrategy(seed.split());
+            heuristic = new HeuristicStrategy(seed.split());
+            perfect = new PerfectStrategy(new RandomStrategy(seed.split()));
+        }
+    }
+
+    @Benchmark
+    public long playout3x3Random(PlayoutState s) {
+        return Benchmarks.playout(s.board, s.random, s.random);
+    }
+
+    @Benchmark
+    public long playout3x3Heuristic(PlayoutState s) {
+        return Benchmarks.playout(s.board, s.heuristic, s.heuristic);
+    }
+
+    @Benchmark
+    public long playout3x3Perfect(PlayoutState s) {
+        return Benchmarks.playout(s.board, s.perfect, s.perfect);
+    }
+
+    @Benchmark
+    public long playout7x7Random(PlayoutState s) {
+        return Benchmarks.playout(s.board7x7, s.random, s.random);
+    }
+
+    /** A 3x3 game in progress and the offscreen image it is painted into */
+    @State(Scope.Thread)
+    public static class PaintState {
+        Board board;
+        BufferedImage image;
+        Graphics2D g;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            board = new Board();
+            board.stepGame(Seed.CROSS, 1, 1);
+            board.stepGame(Seed.NOUGHT, 0, 0);
+            board.stepGame(Seed.CROSS, 2, 1);
+            image = new BufferedImage(board.getCanvasWidth(), board.getCanvasHeight(), BufferedImage.TYPE_INT_ARGB);
+            g = image.createGraphics();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            g.dispose();
+        }
+    }
+
+    @Benchmark
+    public int paint(PaintState s) {
+        s.board.paint(s.g);
+        return s.image.getRGB(0, 0);
+    }
+
+    /** A 15x15 board with the clip set to one cell, as after repaintCell(7, 7) */
+    @State(Scope.Thread)
+    public static class PaintCellState {
+        Board board;
+        BufferedImage image;
+        Graphics2D g;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            board = new Board(15, 15, 5);
+            board.stepGame(Seed.CROSS, 7, 7);
+            image = new BufferedImage(board.getCanvasWidth(), board.getCanvasHeight(), BufferedImage.TYPE_INT_ARGB);
+            g = image.createGraphics();
+            g.setClip(7 * Cell.SIZE, 7 * Cell.SIZE, Cell.SIZE, Cell.SIZE);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            g.dispose();
+        }
+    }
+
+    @Benchmark
+    public int paint15x15OneCell(PaintCellState s) {
+        s.board.paint(s.g);
+        return s.image.getRGB(7 * Cell.SIZE, 7 * Cell.SIZE);
+    }
+}